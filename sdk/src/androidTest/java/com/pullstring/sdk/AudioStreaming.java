@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that an audio stream always ends and lets later requests through, whenever endAudio()
+ * is called, or if it is never called, against canned responses.
+ */
+public class AudioStreaming extends IntegrationTestBase {
+    @Test
+    public void endedBeforeOpen() throws Exception {
+        final InMemoryTransport transport = newTransport(2);
+        useTransport(transport);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                switch (step) {
+                    case 0:
+                        // the stream was closed as soon as it opened
+                        assertNotNull(transport.getLastUpload());
+                        mConversation.sendText("hello");
+                        break;
+                    case 1:
+                        assertEquals(2, transport.getRequests().size());
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        // the stream only opens once the main thread is free
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mConversation.startAudio(mRequest);
+                mConversation.endAudio();
+            }
+        });
+        await();
+    }
+
+    @Test
+    public void neverEnded() throws Exception {
+        final InMemoryTransport transport = newTransport(2);
+        useTransport(transport);
+        mRequest.setMaxAudioDuration(100);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                switch (step) {
+                    case 0:
+                        // the stream was closed once the limit passed, with the audio sent so far
+                        assertEquals(SAMPLES.length * 2, transport.getLastUpload().length);
+                        mConversation.sendText("hello");
+                        break;
+                    case 1:
+                        assertEquals(2, transport.getRequests().size());
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mConversation.startAudio(mRequest);
+
+                // runs after the stream has opened
+                onMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mConversation.addAudio(SAMPLES);
+                    }
+                });
+            }
+        });
+        await();
+    }
+
+    @Test
+    public void startedTwice() throws Exception {
+        final InMemoryTransport transport = newTransport(2);
+        useTransport(transport);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                switch (step) {
+                    case 0:
+                        // the first stream was ended by the second, which endAudio() then ended
+                        break;
+                    case 1:
+                        assertEquals(2, transport.getRequests().size());
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mConversation.startAudio(mRequest);
+                mConversation.startAudio(mRequest);
+                mConversation.endAudio();
+            }
+        });
+        await();
+    }
+
+    private static InMemoryTransport newTransport(int responses) {
+        InMemoryTransport transport = new InMemoryTransport();
+        for (int i = 0; i < responses; i++) {
+            transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-" + i + "\", \"outputs\": []}");
+        }
+        return transport;
+    }
+
+    private static void onMainThread(Runnable runnable) {
+        new Handler(Looper.getMainLooper()).post(runnable);
+    }
+
+    private static final short[] SAMPLES = {1, 2, 3, 4};
+}
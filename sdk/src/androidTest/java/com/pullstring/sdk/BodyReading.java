@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that response bodies are read whole whether their length is known, unknown or wrong,
+ * and that an array handed out as a body never goes back into the buffer pool.
+ */
+public class BodyReading {
+    @Test
+    public void knownLength() throws Exception {
+        byte[] body = bytes(BufferPool.BUFFER_SIZE);
+        byte[] read = HttpClient.readBytes(new ByteArrayInputStream(body), body.length);
+        assertTrue(Arrays.equals(body, read));
+
+        // the same size as a pooled buffer, but the body's own
+        assertNotSame(read, BufferPool.acquire(BufferPool.BUFFER_SIZE));
+    }
+
+    @Test
+    public void wrongLength() throws Exception {
+        byte[] body = bytes(100);
+        assertTrue(Arrays.equals(body, HttpClient.readBytes(new ByteArrayInputStream(body), 200)));
+        assertTrue(Arrays.equals(body, HttpClient.readBytes(new ByteArrayInputStream(body), 10)));
+    }
+
+    @Test
+    public void unknownLength() throws Exception {
+        byte[] body = bytes(3 * BufferPool.BUFFER_SIZE + 1);
+        assertTrue(Arrays.equals(body, HttpClient.readBytes(new ByteArrayInputStream(body), -1)));
+        assertEquals(0, HttpClient.readBytes(new ByteArrayInputStream(new byte[0]), -1).length);
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that waits for a connection slot are served in order and end when a request is
+ * cancelled or runs out of time, rather than hanging on a full pool.
+ */
+public class ConnectionLimits {
+    @Test
+    public void cancelWakesWaiter() throws Exception {
+        final ConnectionPermits permits = new ConnectionPermits(1);
+        assertTrue(permits.tryAcquire());
+
+        final Call call = new Call(0);
+        final AtomicBoolean acquired = new AtomicBoolean(true);
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acquired.set(permits.acquire(call));
+            }
+        });
+        waiter.start();
+
+        Thread.sleep(100);
+        call.cancel();
+        waiter.join(WAIT);
+        assertFalse(waiter.isAlive());
+        assertFalse(acquired.get());
+
+        // the cancelled wait doesn't keep the slot from the next request
+        permits.release();
+        assertTrue(permits.tryAcquire());
+    }
+
+    @Test
+    public void deadlineEndsWait() throws Exception {
+        ConnectionPermits permits = new ConnectionPermits(1);
+        assertTrue(permits.tryAcquire());
+
+        Call call = new Call(100);
+        call.startDeadline();
+        long start = System.currentTimeMillis();
+        assertFalse(permits.acquire(call));
+        assertTrue(System.currentTimeMillis() - start < WAIT);
+        assertNotNull(call.getInterruptedResponse());
+    }
+
+    @Test
+    public void asyncWaitersInOrder() throws Exception {
+        ConnectionPermits permits = new ConnectionPermits(1);
+        assertTrue(permits.tryAcquire());
+
+        final ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+            permits.acquireAsync(new Call(0), 0, new ConnectionPermits.Waiter() {
+                @Override
+                void onAcquired() {
+                    order.add(index);
+                }
+
+                @Override
+                void onAbandoned() {
+                    fail("waiter " + index + " abandoned");
+                }
+            });
+        }
+
+        // nothing waits on a thread, and each release hands the slot to the next in line
+        assertTrue(order.isEmpty());
+        for (int i = 0; i < 3; i++) {
+            permits.release();
+            assertEquals(i + 1, order.size());
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void asyncWaitGivesUp() throws Exception {
+        ConnectionPermits permits = new ConnectionPermits(1);
+        assertTrue(permits.tryAcquire());
+
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        permits.acquireAsync(new Call(0), 100, new Latch(timedOut));
+        Call call = new Call(0);
+        permits.acquireAsync(call, 0, new Latch(cancelled));
+        call.cancel();
+
+        assertTrue(cancelled.await(WAIT, TimeUnit.MILLISECONDS));
+        assertTrue(timedOut.await(WAIT, TimeUnit.MILLISECONDS));
+
+        // with both waits given up, the slot goes back to the pool
+        permits.release();
+        assertTrue(permits.tryAcquire());
+    }
+
+    @Test
+    public void hedgeNeedsFreeSlot() throws Exception {
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicLong delay = new AtomicLong();
+        ApiClient client = new ApiClient("https://localhost/v1/") {
+            @Override
+            HttpsURLConnection openConnection(String url) throws IOException {
+                opened.incrementAndGet();
+                return new FakeConnection(url, 200, "{\"conversation\": \"c-1\", \"outputs\": []}", delay.get());
+            }
+        };
+        client.setExecutor(Executors.newSingleThreadExecutor());
+        client.setHedgeExecutor(Executors.newCachedThreadPool());
+
+        RetryPolicy policy = new RetryPolicy();
+        policy.setHedgePercentile(0.5);
+        policy.setMinHedgeDelay(50);
+        client.setRetryPolicy(policy);
+
+        ConnectionPermits permits = new ConnectionPermits(1);
+        client.setConnectionPermits(permits);
+
+        // enough quick answers to set the hedge delay
+        for (int i = 0; i < 20; i++) {
+            assertTrue(FakeConnection.post(client, newRequest()).getStatus().isSuccess());
+        }
+
+        // the original holds the only slot, so no copy is sent however slow it is
+        delay.set(300);
+        opened.set(0);
+        assertTrue(FakeConnection.post(client, newRequest()).getStatus().isSuccess());
+        assertEquals(1, opened.get());
+        assertTrue(permits.tryAcquire());
+    }
+
+    private static ApiRequest newRequest() {
+        ApiRequest request = new ApiRequest("conversation", null, new HashMap<String, String>(), new byte[]{'{', '}'});
+        request.setIdempotent(true);
+        request.setParser(new ResponseParser());
+        return request;
+    }
+
+    private static class Latch extends ConnectionPermits.Waiter {
+        Latch(CountDownLatch abandoned) {
+            mAbandoned = abandoned;
+        }
+
+        @Override
+        void onAcquired() {
+            fail("acquired after giving up");
+        }
+
+        @Override
+        void onAbandoned() {
+            mAbandoned.countDown();
+        }
+
+        private final CountDownLatch mAbandoned;
+    }
+
+    private static final long WAIT = 5000;
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the keep-alive configuration reaches the platform's system properties, which it
+ * only reads when the first connection is made.
+ */
+public class ConnectionPoolDefaults {
+    @Test
+    public void appliedByTransport() {
+        // loading the transport applies the default before any connection can be made
+        new UrlConnectionTransport("https://localhost/v1/");
+
+        ConnectionPool pool = ConnectionPool.getDefault();
+        assertEquals(Integer.toString(pool.getMaxIdleConnections()),
+                System.getProperty(ConnectionPool.MAX_CONNECTIONS));
+        assertEquals(Long.toString(pool.getKeepAliveDuration()),
+                System.getProperty(ConnectionPool.KEEP_ALIVE_DURATION));
+        assertEquals(Boolean.toString(pool.getMaxIdleConnections() > 0), System.getProperty(ConnectionPool.KEEP_ALIVE));
+    }
+
+    @Test
+    public void setDefault() {
+        ConnectionPool previous = ConnectionPool.getDefault();
+        try {
+            ConnectionPool.setDefault(new ConnectionPool(0, 1000));
+            assertEquals("false", System.getProperty(ConnectionPool.KEEP_ALIVE));
+            assertEquals("0", System.getProperty(ConnectionPool.MAX_CONNECTIONS));
+            assertEquals("1000", System.getProperty(ConnectionPool.KEEP_ALIVE_DURATION));
+
+            // a later default doesn't undo the one the app chose
+            ConnectionPool.applyDefault();
+            assertEquals("0", System.getProperty(ConnectionPool.MAX_CONNECTIONS));
+        } finally {
+            ConnectionPool.setDefault(previous);
+        }
+    }
+}
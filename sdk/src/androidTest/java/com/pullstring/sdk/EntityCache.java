@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that getEntities() is answered from entity values already seen while they are known to
+ * be current, and from the Web API otherwise, against canned responses.
+ */
+public class EntityCache extends IntegrationTestBase {
+    @Test
+    public void cacheFirst() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": [], \"entities\": {\"SCORE\": 1, \"NAME\": \"Jack\"}}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": [], \"entities\": {\"MOOD\": \"happy\"}}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": []}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": [], \"entities\": {\"SCORE\": 3}}");
+        useTransport(transport);
+        mRequest.setCacheEntities(true);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                switch (step) {
+                    case 0:
+                        // both were in the last response
+                        mConversation.getEntities(names("NAME", "SCORE"));
+                        break;
+                    case 1:
+                        assertEquals(1, transport.getRequests().size());
+                        assertEquals("e-1", response.getETag());
+                        assertEquals(2, response.getEntities().size());
+                        assertEquals("Jack", ((Label) response.getEntities().get(0)).getValue());
+                        assertEquals(1, ((Counter) response.getEntities().get(1)).getValue(), 0);
+
+                        // never seen, so it has to be asked for
+                        mConversation.getEntities(names("SCORE", "MOOD"));
+                        break;
+                    case 2:
+                        assertEquals(2, transport.getRequests().size());
+
+                        // after other input, nothing is known for sure
+                        mConversation.sendText("hello");
+                        break;
+                    case 3:
+                        mConversation.getEntities(names("SCORE"));
+                        break;
+                    case 4:
+                        assertEquals(4, transport.getRequests().size());
+                        assertEquals(3, ((Counter) response.getEntities().get(0)).getValue(), 0);
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        await();
+    }
+
+    @Test
+    public void deliveredLater() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": [], \"entities\": {\"SCORE\": 1}}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": []}");
+        useTransport(transport);
+        mRequest.setCacheEntities(true);
+
+        final AtomicBoolean returned = new AtomicBoolean();
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                switch (step) {
+                    case 0:
+                        mConversation.getEntities(names("SCORE"));
+                        returned.set(true);
+                        break;
+                    case 1:
+                        // answered from the cache, but never inside the getEntities() call
+                        assertTrue(returned.get());
+                        assertEquals(1, transport.getRequests().size());
+
+                        // asking for nothing still goes to the Web API
+                        mConversation.getEntities(names());
+                        break;
+                    case 2:
+                        assertEquals(2, transport.getRequests().size());
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        await();
+    }
+
+    @Test
+    public void timedResponse() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": [], \"entities\": {\"SCORE\": 1}}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": []}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"etag\": \"e-1\"," +
+                " \"outputs\": [], \"entities\": {\"SCORE\": 2}}");
+        useTransport(transport);
+        mRequest.setCacheEntities(true);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                switch (step) {
+                    case 0:
+                        mConversation.checkForTimedResponse();
+                        break;
+                    case 1:
+                        assertEquals(2, transport.getRequests().size());
+
+                        // a timed response may have changed entities, so ask the Web API
+                        mConversation.getEntities(names("SCORE"));
+                        break;
+                    case 2:
+                        assertEquals(3, transport.getRequests().size());
+                        assertEquals(2, ((Counter) response.getEntities().get(0)).getValue(), 0);
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        await();
+    }
+
+    private static ArrayList<String> names(String... names) {
+        return new ArrayList<>(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that only changed entity values are sent, and that calls changing nothing are skipped,
+ * against canned responses.
+ */
+public class EntityDeltas extends IntegrationTestBase {
+    @Test
+    public void onlyChanges() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": []," +
+                " \"entities\": {\"SCORE\": 1, \"NAME\": \"Jack\"}}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-2\", \"outputs\": []," +
+                " \"entities\": {\"SCORE\": 2}}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-3\", \"outputs\": []}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-4\", \"outputs\": []}");
+        useTransport(transport);
+        mRequest.setSkipUnchangedEntities(true);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                switch (step) {
+                    case 0:
+                        // nothing changes, so nothing is sent
+                        mConversation.setEntities(entities(1, "Jack"));
+                        break;
+                    case 1:
+                        assertEquals(1, transport.getRequests().size());
+                        assertEquals(2, response.getEntities().size());
+
+                        // only the score changes
+                        mConversation.setEntities(entities(2, "Jack"));
+                        break;
+                    case 2:
+                        String body = body(transport.getRequests().get(1));
+                        assertTrue(body, body.contains("SCORE"));
+                        assertFalse(body, body.contains("NAME"));
+
+                        // after other input, nothing is known for sure
+                        mConversation.sendText("hello");
+                        break;
+                    case 3:
+                        mConversation.setEntities(entities(2, "Jack"));
+                        break;
+                    case 4:
+                        assertEquals(4, transport.getRequests().size());
+                        body = body(transport.getRequests().get(3));
+                        assertTrue(body, body.contains("SCORE") && body.contains("NAME"));
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        await();
+    }
+
+    @Test
+    public void timedResponse() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": []," +
+                " \"entities\": {\"SCORE\": 1, \"NAME\": \"Jack\"}}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": []}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": []}");
+        useTransport(transport);
+        mRequest.setSkipUnchangedEntities(true);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                switch (step) {
+                    case 0:
+                        // a check without a body is sent as is
+                        mConversation.checkForTimedResponse();
+                        break;
+                    case 1:
+                        assertEquals(2, transport.getRequests().size());
+
+                        // a timed response may have changed entities, so the values are sent again
+                        mConversation.setEntities(entities(1, "Jack"));
+                        break;
+                    case 2:
+                        assertEquals(3, transport.getRequests().size());
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        await();
+    }
+
+    private static ArrayList<Entity> entities(double score, String name) {
+        return new ArrayList<Entity>(Arrays.asList(new Counter("SCORE", score), new Label("NAME", name)));
+    }
+
+    private static String body(ApiRequest request) {
+        try {
+            return new String(request.getBody(), HttpClient.ENCODING);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
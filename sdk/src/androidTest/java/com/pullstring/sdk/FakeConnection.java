@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.cert.Certificate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * A connection that never touches the network, for testing ApiClient below the Transport layer.
+ * It answers with a canned status and body after a delay, and like a real connection, a
+ * disconnect() while the answer is awaited makes the wait fail right away.
+ */
+class FakeConnection extends HttpsURLConnection {
+    /**
+     * @param delay How long the answer takes, in milliseconds.
+     */
+    FakeConnection(String url, int status, String body, long delay) throws IOException {
+        super(new URL(url));
+        mStatus = status;
+        mBody = body.getBytes(Charset.forName("UTF-8"));
+        mDelay = delay;
+    }
+
+    /**
+     * Post a request through a client and wait for its Response.
+     */
+    static Response post(ApiClient client, ApiRequest request) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Response[] received = new Response[1];
+        client.post(request, new ResponseListener() {
+            @Override
+            public void onResponse(Response response) {
+                received[0] = response;
+                done.countDown();
+            }
+        });
+
+        if (!done.await(WAIT, TimeUnit.MILLISECONDS)) {
+            throw new AssertionError("no response within " + WAIT + " ms");
+        }
+        return received[0];
+    }
+
+    /**
+     * Check whether the connection was disconnected, as it is when a request is aborted or fails.
+     */
+    synchronized boolean isDisconnected() {
+        return mDisconnected;
+    }
+
+    /**
+     * Get the bytes written as the request body, or null if nothing was written.
+     */
+    synchronized byte[] getRequestBody() {
+        return mRequestBody != null ? mRequestBody.toByteArray() : null;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException {
+        if (mRequestBody == null) {
+            mRequestBody = new ByteArrayOutputStream();
+        }
+        return mRequestBody;
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        awaitAnswer();
+        return mStatus;
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        awaitAnswer();
+        return mStatus < HTTP_BAD_REQUEST ? "OK" : "Error";
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        awaitAnswer();
+        if (mStatus >= HTTP_BAD_REQUEST) {
+            throw new IOException("HTTP " + mStatus);
+        }
+        return new ByteArrayInputStream(mBody);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return mStatus >= HTTP_BAD_REQUEST ? new ByteArrayInputStream(mBody) : null;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        awaitAnswer();
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        mDisconnected = true;
+        notifyAll();
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return false;
+    }
+
+    @Override
+    public String getCipherSuite() {
+        return null;
+    }
+
+    @Override
+    public Certificate[] getLocalCertificates() {
+        return null;
+    }
+
+    @Override
+    public Certificate[] getServerCertificates() {
+        return null;
+    }
+
+    private synchronized void awaitAnswer() throws IOException {
+        long until = mOpenedAt + mDelay;
+        long left = until - System.currentTimeMillis();
+        while (left > 0 && !mDisconnected) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted");
+            }
+            left = until - System.currentTimeMillis();
+        }
+
+        if (mDisconnected) {
+            throw new IOException("Socket closed");
+        }
+    }
+
+    private final int mStatus;
+    private final byte[] mBody;
+    private final long mDelay;
+    private final long mOpenedAt = System.currentTimeMillis();
+    private ByteArrayOutputStream mRequestBody;
+    private boolean mDisconnected;
+
+    private static final long WAIT = 5000;
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that an idempotent request slower than recent ones races a hedged copy, that the loser
+ * is aborted, and that fast requests or a full hedge executor send just the one copy. Runs
+ * ApiClient against fake connections, since hedging happens below the Transport.
+ */
+public class Hedging {
+    @Before
+    public void setup() throws Exception {
+        mClient = new ApiClient("https://localhost/v1/") {
+            @Override
+            HttpsURLConnection openConnection(String url) throws IOException {
+                synchronized (mConnections) {
+                    Long delay = mDelays.poll();
+                    FakeConnection connection = new FakeConnection(url, 200, BODY, delay != null ? delay : 0);
+                    mConnections.add(connection);
+                    return connection;
+                }
+            }
+        };
+        mClient.setExecutor(Executors.newSingleThreadExecutor());
+        mClient.setHedgeExecutor(Executors.newCachedThreadPool());
+
+        RetryPolicy policy = new RetryPolicy();
+        policy.setHedgePercentile(0.5);
+        policy.setMinHedgeDelay(50);
+        mClient.setRetryPolicy(policy);
+
+        mPermits = new ConnectionPermits(2);
+        mClient.setConnectionPermits(mPermits);
+
+        // enough quick answers to set the hedge delay
+        for (int i = 0; i < 20; i++) {
+            assertTrue(FakeConnection.post(mClient, newRequest()).getStatus().isSuccess());
+        }
+        synchronized (mConnections) {
+            mConnections.clear();
+        }
+    }
+
+    @Test
+    public void hedgeWins() throws Exception {
+        mDelays.add(WAIT);
+        mDelays.add(0L);
+
+        long start = System.currentTimeMillis();
+        assertTrue(FakeConnection.post(mClient, newRequest()).getStatus().isSuccess());
+        assertTrue(System.currentTimeMillis() - start < WAIT);
+
+        // the original was aborted, and both copies gave their slots back
+        assertEquals(2, connections().size());
+        assertTrue(eventually(new Condition() {
+            @Override
+            boolean isMet() {
+                return connections().get(0).isDisconnected() && allSlotsFree();
+            }
+        }));
+        assertFalse(connections().get(1).isDisconnected());
+    }
+
+    @Test
+    public void fastRequestNotHedged() throws Exception {
+        assertTrue(FakeConnection.post(mClient, newRequest()).getStatus().isSuccess());
+
+        // well past the hedge delay, and still just the one copy
+        Thread.sleep(200);
+        assertEquals(1, connections().size());
+        assertTrue(allSlotsFree());
+    }
+
+    @Test
+    public void hedgeRejected() throws Exception {
+        mClient.setHedgeExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        mDelays.add(300L);
+
+        // the original still answers, with its full delay
+        long start = System.currentTimeMillis();
+        assertTrue(FakeConnection.post(mClient, newRequest()).getStatus().isSuccess());
+        assertTrue(System.currentTimeMillis() - start >= 300);
+        assertEquals(1, connections().size());
+        assertFalse(connections().get(0).isDisconnected());
+        assertTrue(allSlotsFree());
+    }
+
+    /**
+     * Get the connections opened so far, in order. Hedges open theirs on other threads.
+     */
+    private ArrayList<FakeConnection> connections() {
+        synchronized (mConnections) {
+            return new ArrayList<>(mConnections);
+        }
+    }
+
+    private boolean allSlotsFree() {
+        if (!mPermits.tryAcquire()) {
+            return false;
+        }
+        boolean second = mPermits.tryAcquire();
+        if (second) {
+            mPermits.release();
+        }
+        mPermits.release();
+        return second;
+    }
+
+    private static boolean eventually(Condition condition) throws InterruptedException {
+        long until = System.currentTimeMillis() + WAIT;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > until) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static ApiRequest newRequest() {
+        ApiRequest request = new ApiRequest("conversation", null, new HashMap<String, String>(), new byte[]{'{', '}'});
+        request.setIdempotent(true);
+        request.setParser(new ResponseParser());
+        return request;
+    }
+
+    private abstract static class Condition {
+        abstract boolean isMet();
+    }
+
+    private ApiClient mClient;
+    private ConnectionPermits mPermits;
+    private final ArrayList<FakeConnection> mConnections = new ArrayList<>();
+    private final LinkedList<Long> mDelays = new LinkedList<>();
+
+    private static final long WAIT = 5000;
+    private static final String BODY = "{\"conversation\": \"c-1\", \"outputs\": []}";
+}
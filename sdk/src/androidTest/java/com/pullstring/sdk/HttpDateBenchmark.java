@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check HttpDate against SimpleDateFormat and time the two.
+ */
+public class HttpDateBenchmark {
+    @Test
+    public void sameAsSimpleDateFormat() throws Exception {
+        for (String value : DATES) {
+            SimpleDateFormat format = new SimpleDateFormat(HttpDate.PATTERN, Locale.US);
+            assertEquals(value, format.parse(value), HttpDate.parse(value));
+        }
+    }
+
+    @Test
+    public void fallsBack() throws Exception {
+        // single-digit day isn't the fixed layout, but is still a valid date
+        String value = "Tue, 7 Mar 2017 09:26:53 +0000";
+        assertEquals(HttpDate.INVALID, HttpDate.parseFast(value));
+        assertEquals(new SimpleDateFormat(HttpDate.PATTERN, Locale.US).parse(value), HttpDate.parse(value));
+        assertNull(Response.parseDate("not a date"));
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        String value = DATES[0];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            new SimpleDateFormat(HttpDate.PATTERN, Locale.US).parse(value);
+        }
+        long perResponse = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            HttpDate.parseFast(DATES[i % DATES.length]);
+        }
+        long fast = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            HttpDate.parse(value);
+        }
+        long cached = System.nanoTime() - start;
+
+        Log.i(Keys.TAG, String.format("last_modified: new SimpleDateFormat %.0f ns, hand-parsed %.0f ns, cached %.0f ns",
+                (double) perResponse / ITERATIONS, (double) fast / ITERATIONS, (double) cached / ITERATIONS));
+    }
+
+    private static final String[] DATES = {
+            "Tue, 14 Mar 2017 09:26:53 +0000",
+            "Wed, 01 Feb 2017 23:59:59 -0800",
+            "Thu, 29 Feb 2016 12:00:00 +0530",
+            "Sun, 31 Dec 2017 24:00:00 +0000",
+            "Mon, 01 Jan 1970 00:00:00 GMT",
+            "Fri, 17 Oct 2025 06:07:08 UTC",
+    };
+    private static final int ITERATIONS = 10000;
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Run a short conversation against canned responses instead of the Web API.
+ */
+public class InMemoryConvo extends IntegrationTestBase {
+    @Test
+    public void inMemoryConvo() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": [" +
+                "{\"type\": \"dialog\", \"id\": \"o-1\", \"text\": \"Hello. What's your name?\"}]}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-2\", \"outputs\": [" +
+                "{\"type\": \"dialog\", \"id\": \"o-2\", \"text\": \"Hello Jack\"}]}");
+        useTransport(transport);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                switch (step) {
+                    case 0:
+                        textShouldEqual(new String[] {"Hello. What's your name?"}, response);
+                        mConversation.sendText("jack");
+                        break;
+                    case 1:
+                        textShouldEqual(new String[] {"Hello Jack"}, response);
+
+                        ArrayList<ApiRequest> requests = transport.getRequests();
+                        assertEquals(2, requests.size());
+                        assertEquals("conversation", requests.get(0).getEndpoint());
+                        assertEquals("conversation/c-1", requests.get(1).getEndpoint());
+                        assertEquals("p-2", mConversation.getParticipantId());
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        await();
+    }
+
+    @Test
+    public void pipelinedInput() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": []}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-2\", \"outputs\": []}");
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-3\", \"outputs\": []}");
+        useTransport(transport);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                switch (step) {
+                    case 0:
+                        assertEquals("p-1", response.getParticipantId());
+                        break;
+                    case 1:
+                        assertEquals("p-2", response.getParticipantId());
+                        break;
+                    case 2:
+                        assertEquals("p-3", response.getParticipantId());
+
+                        // input sent before the first response still went to the new conversation
+                        ArrayList<ApiRequest> requests = transport.getRequests();
+                        assertEquals(3, requests.size());
+                        assertEquals("conversation", requests.get(0).getEndpoint());
+                        assertEquals("conversation/c-1", requests.get(1).getEndpoint());
+                        assertEquals("conversation/c-1", requests.get(2).getEndpoint());
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        mConversation.sendText("one");
+        mConversation.sendText("two");
+        await();
+    }
+
+    @Test
+    public void cancelQueued() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": []}");
+        useTransport(transport);
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                switch (step) {
+                    case 0:
+                        assertTrue(response.getStatus().isSuccess());
+                        break;
+                    case 1:
+                        assertEquals(Status.InternalError.CANCELLED.getValue(), response.getStatus().getStatusCode());
+
+                        // the cancelled input never reached the transport
+                        assertEquals(1, transport.getRequests().size());
+                        finish();
+                        break;
+                    default:
+                        shouldNotBeHere();
+                }
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        RequestHandle handle = mConversation.sendText("never sent");
+        handle.cancel();
+        assertTrue(handle.isCancelled());
+        await();
+    }
+}
@@ -16,17 +16,17 @@ class IntegrationTestBase {
     @Before
     public void setup() {
         mRequest = new Request(API_KEY);
-        mConversation = new Conversation(new ResponseListener() {
-            @Override
-            public void onResponse(Response response) {
-                int step = mStep;
-                mStep++;
-                mListener.run(response, step);
-            }
-        });
+        mConversation = new Conversation(mStepListener);
         mSignal = new CountDownLatch(1);
     }
 
+    /**
+     * Replace the test conversation with one that uses a different Transport.
+     */
+    void useTransport(Transport transport) {
+        mConversation = new Conversation(mStepListener, transport);
+    }
+
     void await() throws Exception {
         mSignal.await();
     }
@@ -202,6 +202,15 @@ class IntegrationTestBase {
         fail("The current test should have ended sooner");
     }
 
+    private final ResponseListener mStepListener = new ResponseListener() {
+        @Override
+        public void onResponse(Response response) {
+            int step = mStep;
+            mStep++;
+            mListener.run(response, step);
+        }
+    };
+
     TestListener mListener;
     Request mRequest;
     Conversation mConversation;
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compare JsonBodyWriter against building a request body as a JSONObject, a String and then
+ * bytes, and time the two.
+ */
+public class JsonBodyWriterBenchmark {
+    @Test
+    public void sameAsJsonObject() throws Exception {
+        LinkedHashMap<String, Object> payload = buildPayload();
+        assertArrayEquals(writeTree(payload), writeStream(new JsonBodyWriter(), payload));
+    }
+
+    @Test
+    public void escapes() throws Exception {
+        JsonBodyWriter writer = new JsonBodyWriter();
+        writer.reset().beginObject().name("text").value("a \"quote\" / \\ \n\t\u0001 \u00e9 \ud83d\ude00").endObject();
+        assertEquals("{\"text\":\"a \\\"quote\\\" \\/ \\\\ \\n\\t\\u0001 \u00e9 \ud83d\ude00\"}",
+                new String(writer.toByteArray(), HttpClient.ENCODING));
+
+        writer.reset().beginArray().value(12.0).value(2.5).value(3).value(false).value((Object) null).endArray();
+        assertEquals("[12,2.5,3,false,null]", new String(writer.toByteArray(), HttpClient.ENCODING));
+
+        try {
+            writer.reset().value(Double.NaN);
+            fail("NaN written");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        LinkedHashMap<String, Object> payload = buildPayload();
+        JsonBodyWriter writer = new JsonBodyWriter();
+
+        // warm up both paths before timing them
+        for (int i = 0; i < WARMUP; i++) {
+            writeTree(payload);
+            writeStream(writer, payload);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            writeTree(payload);
+        }
+        long tree = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            writeStream(writer, payload);
+        }
+        long stream = System.nanoTime() - start;
+
+        Log.i(Keys.TAG, String.format("request body: JSONObject %.2f us, JsonBodyWriter %.2f us",
+                tree / 1e3 / ITERATIONS, stream / 1e3 / ITERATIONS));
+    }
+
+    /**
+     * The way Conversation used to build bodies
+     */
+    private static byte[] writeTree(LinkedHashMap<String, Object> payload) throws Exception {
+        JSONObject body = new JSONObject();
+        body.put("build_type", BuildType.SANDBOX.toString());
+        body.put("participant", PARTICIPANT);
+        for (Map.Entry<String, Object> kv : payload.entrySet()) {
+            Object value = kv.getValue();
+            if (value instanceof Map) {
+                value = new JSONObject((Map) value);
+            }
+            body.put(kv.getKey(), value);
+        }
+        return body.toString().getBytes(HttpClient.ENCODING);
+    }
+
+    private static byte[] writeStream(JsonBodyWriter writer, LinkedHashMap<String, Object> payload) {
+        writer.reset().beginObject();
+        writer.name("build_type").value(BuildType.SANDBOX.toString());
+        writer.name("participant").value(PARTICIPANT);
+        for (Map.Entry<String, Object> kv : payload.entrySet()) {
+            writer.name(kv.getKey()).value(kv.getValue());
+        }
+        return writer.endObject().toByteArray();
+    }
+
+    /**
+     * An intent with a handful of entities, like a typical turn
+     */
+    private static LinkedHashMap<String, Object> buildPayload() {
+        LinkedHashMap<String, Object> entities = new LinkedHashMap<>();
+        entities.put("NAME", "Jack");
+        entities.put("SCORE", 12.0);
+        entities.put("HAPPY", true);
+        entities.put("MOOD", "cheerful, if a little \"tired\"");
+
+        LinkedHashMap<String, Object> payload = new LinkedHashMap<>();
+        payload.put("intent", "greet_the_user");
+        payload.put("set_entities", entities);
+        return payload;
+    }
+
+    private static final String PARTICIPANT = "2f1c2b4e-6e53-4c41-9d4a-1b0a3e5c7d88";
+    private static final int WARMUP = 100;
+    private static final int ITERATIONS = 1000;
+}
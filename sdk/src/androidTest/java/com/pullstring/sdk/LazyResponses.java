@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that a lazily parsed Response holds on to its body only until every part of it has
+ * been decoded.
+ */
+public class LazyResponses {
+    @Test
+    public void bodyReleasedOnceDecoded() throws Exception {
+        Response response = parse(BODY);
+        ArrayList<Output> outputs = response.getOutputs();
+        assertEquals(2, outputs.size());
+        assertEquals(1, response.getEntities().size());
+
+        // the dialog's phonemes are still in the body
+        assertFalse(collected());
+
+        assertEquals(2, ((DialogOutput) outputs.get(0)).getPhonemes().size());
+        assertTrue(collected());
+    }
+
+    @Test
+    public void bodyReleasedOnceReplaced() throws Exception {
+        Response response = parse(BODY);
+        DialogOutput dialog = (DialogOutput) response.getOutputs().get(0);
+        response.getEntities();
+
+        // phonemes that are replaced are never decoded
+        dialog.setPhonemes(new ArrayList<Phoneme>());
+        assertTrue(collected());
+        assertEquals(0, dialog.getPhonemes().size());
+    }
+
+    /**
+     * Parse a body lazily, keeping only a weak reference to it.
+     */
+    private Response parse(String json) throws Exception {
+        byte[] body = json.getBytes("UTF-8");
+        mBody = new WeakReference<>(body);
+        return new ResponseParser(true, EnumSet.allOf(ResponseField.class), null).parse(body, null);
+    }
+
+    private boolean collected() throws InterruptedException {
+        for (int i = 0; i < 20 && mBody.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        return mBody.get() == null;
+    }
+
+    private WeakReference<byte[]> mBody;
+
+    private static final String BODY = "{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": [" +
+            "{\"type\": \"dialog\", \"id\": \"o-1\", \"text\": \"Hi\", \"phonemes\": [" +
+            "{\"name\": \"AA\", \"seconds_since_start\": 0.1}, {\"name\": \"B\", \"seconds_since_start\": 0.2}]}," +
+            "{\"type\": \"behavior\", \"behavior\": \"smile\"}], \"entities\": {\"SCORE\": 1}}";
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that behavior parameters decode nested arrays and dictionaries on first use, once, and
+ * that every value that isn't one gets its own empty collection, against canned responses.
+ */
+public class ParameterValues extends IntegrationTestBase {
+    @Test
+    public void nestedOnFirstUse() throws Exception {
+        Map<String, ParameterValue> parameters = parameters();
+
+        ArrayList<ParameterValue> list = parameters.get("list").getArray();
+        assertEquals(3, list.size());
+        assertEquals("a", list.get(0).getString());
+        assertEquals(2, list.get(1).getDouble(), 0);
+        assertTrue(list.get(2).getBoolean());
+        assertSame(list, parameters.get("list").getArray());
+
+        HashMap<String, ParameterValue> dict = parameters.get("dict").getDictionary();
+        assertEquals(1, dict.size());
+        assertEquals(1, dict.get("inner").getArray().size());
+        assertSame(dict, parameters.get("dict").getDictionary());
+
+        // nested values stay reachable as the raw value too
+        assertNotNull(parameters.get("list").getRawValue());
+        assertEquals(0, parameters.get("list").getDictionary().size());
+    }
+
+    @Test
+    public void ownEmptyCollections() throws Exception {
+        Map<String, ParameterValue> parameters = parameters();
+        ParameterValue text = parameters.get("text");
+        ParameterValue number = parameters.get("number");
+        assertEquals("hello", text.getString());
+        assertEquals(1.5, number.getDouble(), 0);
+
+        // one value's empty collections can be changed without touching another's
+        text.getArray().add(new ParameterValue("x"));
+        text.getDictionary().put("key", new ParameterValue("y"));
+        assertEquals(1, text.getArray().size());
+        assertEquals(1, text.getDictionary().size());
+        assertEquals(0, number.getArray().size());
+        assertEquals(0, number.getDictionary().size());
+        assertEquals(0, new ParameterValue(true).getArray().size());
+
+        // a new value starts over
+        text.setValue("again");
+        assertEquals(0, text.getArray().size());
+    }
+
+    /**
+     * Get the parameters of the behavior in a canned response, as delivered to the listener.
+     */
+    private Map<String, ParameterValue> parameters() throws Exception {
+        InMemoryTransport transport = new InMemoryTransport();
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": [" +
+                "{\"type\": \"behavior\", \"id\": \"o-1\", \"behavior\": \"gesture\", \"parameters\": {" +
+                "\"text\": \"hello\", \"number\": 1.5, \"list\": [\"a\", 2, true]," +
+                " \"dict\": {\"inner\": [\"b\"]}}}]}");
+        useTransport(transport);
+
+        final ArrayList<Map<String, ParameterValue>> received = new ArrayList<>();
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                received.add(((BehaviorOutput) response.getOutputs().get(0)).getParameters());
+                finish();
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        await();
+        return received.get(0);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Look up phonemes by time, both directly and by following playback with a Cursor.
+ */
+public class PhonemeLookup {
+    @Test
+    public void phonemeAt() {
+        PhonemeTimeline timeline = new PhonemeTimeline(buildPhonemes());
+        int ah = PhonemeTimeline.getPhonemeCode("ah");
+        int ee = PhonemeTimeline.getPhonemeCode("ee");
+
+        assertEquals(4, timeline.size());
+        assertEquals(PhonemeTimeline.NONE, timeline.phonemeAt(0.05));
+        assertEquals(ah, timeline.phonemeAt(0.1));
+        assertEquals(ah, timeline.phonemeAt(0.19));
+        assertEquals(ee, timeline.phonemeAt(0.2));
+        assertEquals("sil", PhonemeTimeline.getPhonemeName(timeline.phonemeAt(10)));
+        assertSame(PhonemeTimeline.getPhonemeName(ah), PhonemeTimeline.getPhonemeName(timeline.getCode(0)));
+    }
+
+    @Test
+    public void cursor() {
+        PhonemeTimeline timeline = new PhonemeTimeline(buildPhonemes());
+        PhonemeTimeline.Cursor cursor = timeline.newCursor();
+
+        // follow playback frame by frame, and check against binary search
+        for (double t = 0; t < 0.5; t += 1 / 60.0) {
+            assertEquals(timeline.phonemeAt(t), cursor.advance(t));
+        }
+
+        // seeking backwards still works
+        assertEquals(timeline.phonemeAt(0.15), cursor.advance(0.15));
+        cursor.reset();
+        assertEquals(-1, cursor.getIndex());
+    }
+
+    @Test
+    public void fullTable() {
+        // a full table hands out UNKNOWN rather than failing
+        PhonemeCodes codes = new PhonemeCodes(2);
+        assertEquals(0, codes.getCode("ah"));
+        assertEquals(1, codes.getCode("ee"));
+        assertEquals(PhonemeTimeline.UNKNOWN, codes.getCode("oh"));
+        assertEquals(0, codes.getCode("ah"));
+        assertEquals("ee", codes.getName(1));
+        assertNull(codes.getName(PhonemeTimeline.UNKNOWN));
+    }
+
+    @Test
+    public void empty() {
+        PhonemeTimeline timeline = new PhonemeTimeline(null);
+        assertEquals(0, timeline.size());
+        assertEquals(PhonemeTimeline.NONE, timeline.phonemeAt(1));
+        assertEquals(PhonemeTimeline.NONE, timeline.newCursor().advance(1));
+    }
+
+    private static ArrayList<Phoneme> buildPhonemes() {
+        // deliberately out of order
+        ArrayList<Phoneme> phonemes = new ArrayList<>();
+        phonemes.add(new Phoneme("ee", 0.2));
+        phonemes.add(new Phoneme("ah", 0.1));
+        phonemes.add(new Phoneme("oh", 0.3));
+        phonemes.add(new Phoneme("sil", 0.4));
+        return phonemes;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that Conversations prewarm their Transport only when asked to, and that a prewarm that
+ * fails or finds every connection slot taken leaves nothing behind for later requests.
+ */
+public class Prewarming extends IntegrationTestBase {
+    @Test
+    public void onCreate() throws Exception {
+        final AtomicInteger prewarms = new AtomicInteger();
+        InMemoryTransport transport = new InMemoryTransport() {
+            @Override
+            public void prewarm() {
+                prewarms.incrementAndGet();
+            }
+        };
+        transport.enqueue("{\"conversation\": \"c-1\", \"participant\": \"p-1\", \"outputs\": []}");
+
+        useTransport(transport);
+        assertEquals(0, prewarms.get());
+
+        transport.setPrewarmOnCreate(true);
+        useTransport(transport);
+        assertEquals(1, prewarms.get());
+
+        mListener = new TestListener() {
+            @Override
+            public void run(Response response, int step) {
+                assertTrue(response.getStatus().isSuccess());
+                assertEquals(1, prewarms.get());
+                finish();
+            }
+        };
+
+        mConversation.start(PROJECT, mRequest);
+        await();
+    }
+
+    @Test
+    public void failed() throws Exception {
+        final AtomicInteger opened = new AtomicInteger();
+        ApiClient client = new ApiClient("https://localhost/v1/") {
+            @Override
+            HttpsURLConnection openConnection(String url) throws IOException {
+                switch (opened.incrementAndGet()) {
+                    case 1:
+                        throw new IOException("Connection refused");
+                    case 2:
+                        return new FakeConnection(url, 500, "", 0);
+                    default:
+                        return new FakeConnection(url, 200, BODY, 0);
+                }
+            }
+        };
+        client.setExecutor(new DirectExecutor());
+        ConnectionPermits permits = new ConnectionPermits(1);
+        client.setConnectionPermits(permits);
+
+        // neither a refused connection nor an error status is reported, or keeps the slot
+        client.prewarm();
+        client.prewarm();
+        assertEquals(2, opened.get());
+        assertTrue(permits.tryAcquire());
+        permits.release();
+
+        assertTrue(FakeConnection.post(client, newRequest()).getStatus().isSuccess());
+    }
+
+    @Test
+    public void skippedWhenBusy() throws Exception {
+        final AtomicInteger opened = new AtomicInteger();
+        ApiClient client = new ApiClient("https://localhost/v1/") {
+            @Override
+            HttpsURLConnection openConnection(String url) throws IOException {
+                opened.incrementAndGet();
+                return new FakeConnection(url, 200, "", 0);
+            }
+        };
+        client.setExecutor(new DirectExecutor());
+        ConnectionPermits permits = new ConnectionPermits(1);
+        client.setConnectionPermits(permits);
+
+        // every slot is in use, so connections are already warm
+        assertTrue(permits.tryAcquire());
+        client.prewarm();
+        assertEquals(0, opened.get());
+
+        permits.release();
+        client.prewarm();
+        assertEquals(1, opened.get());
+        assertTrue(permits.tryAcquire());
+    }
+
+    private static ApiRequest newRequest() {
+        ApiRequest request = new ApiRequest("conversation", null, new HashMap<String, String>(), new byte[]{'{', '}'});
+        request.setParser(new ResponseParser());
+        return request;
+    }
+
+    private static class DirectExecutor implements Executor {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
+
+    private static final String BODY = "{\"conversation\": \"c-1\", \"outputs\": []}";
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fuzz the query string encoding against java.net.URI: every URL must parse, and every
+ * parameter must decode back to exactly what was sent.
+ */
+public class QueryEncoding {
+    @Test
+    public void reservedCharacters() throws Exception {
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("account", "a&b=c d#e?f/g+h%i");
+        assertEquals("account=a%26b%3Dc%20d%23e%3Ff%2Fg%2Bh%25i", HttpClient.getQueryString(parameters));
+
+        parameters.put("asr_language", "en-US");
+        parameters.put("missing", null);
+        assertEquals("account=a%26b%3Dc%20d%23e%3Ff%2Fg%2Bh%25i&asr_language=en-US",
+                HttpClient.getQueryString(parameters));
+    }
+
+    @Test
+    public void fuzz() throws Exception {
+        Random random = new Random(SEED);
+        for (int i = 0; i < ITERATIONS; i++) {
+            LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+            int count = 1 + random.nextInt(4);
+            for (int j = 0; j < count; j++) {
+                parameters.put(randomString(random), randomString(random));
+            }
+
+            String url = HttpClient.getUrl(VersionInfo.API_BASE_URL, "conversation/c-1", parameters);
+            URI uri = new URI(url);
+            assertEquals(url, uri.toString());
+            assertEquals(url, parameters, decode(uri.getRawQuery()));
+        }
+    }
+
+    /**
+     * Split a raw query string and decode each name and value. Our encoding never leaves a '+',
+     * so URLDecoder's treatment of it as a space doesn't matter.
+     */
+    private static Map<String, String> decode(String rawQuery) throws Exception {
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+        for (String pair : rawQuery.split("&", -1)) {
+            int equals = pair.indexOf('=');
+            assertTrue(pair, equals >= 0);
+            assertFalse(pair, pair.contains("+"));
+            parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                    URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /**
+     * A mix of ASCII (reserved characters included), accented letters, CJK and emoji
+     */
+    private static String randomString(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append((char) (0x20 + random.nextInt(0x5F)));
+                    break;
+                case 1:
+                    sb.append((char) (0xA0 + random.nextInt(0x700)));
+                    break;
+                case 2:
+                    sb.append((char) (0x4E00 + random.nextInt(0x5000)));
+                    break;
+                default:
+                    sb.appendCodePoint(0x1F300 + random.nextInt(0x300));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final long SEED = 20170314;
+    private static final int ITERATIONS = 10000;
+}
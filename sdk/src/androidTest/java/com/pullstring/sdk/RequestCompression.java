@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that JSON bodies are gzipped above the threshold, and sent plain from then on once the
+ * Web API refuses a gzipped body.
+ */
+public class RequestCompression {
+    @Test
+    public void fallsBackOnUnsupportedMediaType() throws Exception {
+        final ArrayList<FakeConnection> connections = new ArrayList<>();
+        final int[] statuses = {200, 415, 200, 200};
+        ApiClient client = new ApiClient("https://localhost/v1/") {
+            @Override
+            HttpsURLConnection openConnection(String url) throws IOException {
+                synchronized (connections) {
+                    FakeConnection connection = new FakeConnection(url, statuses[connections.size()], BODY, 0);
+                    connections.add(connection);
+                    return connection;
+                }
+            }
+        };
+        client.setExecutor(Executors.newSingleThreadExecutor());
+        client.setCompressionThreshold(1);
+
+        // accepted gzipped
+        assertTrue(FakeConnection.post(client, newRequest()).getStatus().isSuccess());
+
+        // refused gzipped, then sent again plain as part of the same request
+        assertTrue(FakeConnection.post(client, newRequest()).getStatus().isSuccess());
+
+        // never gzipped again
+        assertTrue(FakeConnection.post(client, newRequest()).getStatus().isSuccess());
+
+        assertEquals(4, connections.size());
+        assertEquals("gzip", connections.get(0).getRequestProperty("Content-Encoding"));
+        assertEquals("gzip", connections.get(1).getRequestProperty("Content-Encoding"));
+        assertNull(connections.get(2).getRequestProperty("Content-Encoding"));
+        assertNull(connections.get(3).getRequestProperty("Content-Encoding"));
+        assertTrue(Arrays.equals(JSON, connections.get(2).getRequestBody()));
+        assertTrue(Arrays.equals(JSON, connections.get(3).getRequestBody()));
+    }
+
+    private static ApiRequest newRequest() {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        ApiRequest request = new ApiRequest("conversation", null, headers, JSON);
+        request.setParser(new ResponseParser());
+        return request;
+    }
+
+    private static final byte[] JSON = "{\"text\": \"hello\"}".getBytes();
+    private static final String BODY = "{\"conversation\": \"c-1\", \"outputs\": []}";
+}
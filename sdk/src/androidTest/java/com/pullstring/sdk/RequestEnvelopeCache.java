@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that a Request reuses its envelope until a setting it depends on changes.
+ */
+public class RequestEnvelopeCache {
+    @Test
+    public void reused() throws Exception {
+        Request request = new Request("key");
+        RequestEnvelope envelope = request.getEnvelope();
+        assertSame(envelope, request.getEnvelope());
+
+        // settings that don't affect the envelope leave it alone
+        request.setParticipantId("p-1");
+        request.setTimeout(1000);
+        assertSame(envelope, request.getEnvelope());
+
+        String url = envelope.getUrl(VersionInfo.API_BASE_URL, true);
+        assertSame(url, envelope.getUrl(VersionInfo.API_BASE_URL, true));
+        assertEquals("Bearer key", envelope.getHeaders(false).get("Authorization"));
+        assertEquals("application/json", envelope.getHeaders(false).get("Content-Type"));
+        assertEquals("audio/l16; rate=16000", envelope.getHeaders(true).get("Content-Type"));
+    }
+
+    @Test
+    public void invalidated() throws Exception {
+        Request request = new Request("key");
+        RequestEnvelope envelope = request.getEnvelope();
+        assertEquals("conversation", envelope.getEndpoint());
+
+        request.setConversationId("c-1");
+        RequestEnvelope continued = request.getEnvelope();
+        assertNotSame(envelope, continued);
+        assertEquals("conversation/c-1", continued.getEndpoint());
+        assertTrue(continued.getUrl("https://example.com/v1/", false).endsWith("/v1/conversation/c-1"));
+
+        request.setLanguage("fr-FR");
+        assertEquals("fr-FR", request.getEnvelope().getParameters().get("asr_language"));
+
+        request.setApiKey("other");
+        assertEquals("Bearer other", request.getEnvelope().getHeaders(true).get("Authorization"));
+
+        request.setIfModifiedAction(IfModifiedAction.UPDATE);
+        assertEquals(IfModifiedAction.UPDATE.toString(), request.getEnvelope().getParameters().get("if_modified"));
+    }
+}
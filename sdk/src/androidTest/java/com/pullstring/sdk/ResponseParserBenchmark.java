@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compare ResponseParser, as the SDK runs it on a body already read into memory, against
+ * building a Response from a JSONObject, on a large body with many outputs and phonemes.
+ */
+public class ResponseParserBenchmark {
+    @Test
+    public void sameResult() throws Exception {
+        String json = buildBody(20, 50);
+
+        Response expected = new Response(new JSONObject(json));
+        Response actual = new ResponseParser().parse(json.getBytes("UTF-8"), null);
+        assertSameResponse(expected, actual);
+    }
+
+    @Test
+    public void lazySameResult() throws Exception {
+        String json = buildBody(20, 50);
+
+        Response expected = new Response(new JSONObject(json));
+        Response actual = new ResponseParser(true, ALL_FIELDS, null).parse(json.getBytes("UTF-8"), null);
+        assertSameResponse(expected, actual);
+
+        // decoded once, then remembered
+        assertSame(actual.getOutputs(), actual.getOutputs());
+        DialogOutput dialog = (DialogOutput) actual.getOutputs().get(0);
+        assertSame(dialog.getPhonemes(), dialog.getPhonemes());
+    }
+
+    @Test
+    public void skipFields() throws Exception {
+        byte[] body = buildBody(4, 10).getBytes("UTF-8");
+        EnumSet<ResponseField> fields = EnumSet.of(ResponseField.ENTITIES);
+
+        Response response = new ResponseParser(false, fields, null).parse(body, null);
+        DialogOutput dialog = (DialogOutput) response.getOutputs().get(0);
+        BehaviorOutput behavior = (BehaviorOutput) response.getOutputs().get(1);
+        assertNull(dialog.getPhonemes());
+        assertEquals("", dialog.getAudioUri());
+        assertEquals("", dialog.getUserData());
+        assertEquals("Rusty", dialog.getCharacter());
+        assertNull(behavior.getParameters());
+        assertEquals("animate", behavior.getBehavior());
+        assertEquals(3, response.getEntities().size());
+
+        response = new ResponseParser(true, EnumSet.noneOf(ResponseField.class), null)
+                .parse(body, null);
+        assertNull(((DialogOutput) response.getOutputs().get(0)).getPhonemes());
+        assertTrue(response.getEntities().isEmpty());
+    }
+
+    @Test
+    public void internNames() throws Exception {
+        byte[] body = buildBody(4, 10).getBytes("UTF-8");
+        SymbolTable symbols = new SymbolTable();
+        ResponseParser parser = new ResponseParser(false, ALL_FIELDS, symbols);
+
+        Response first = parser.parse(body, null);
+        Response second = parser.parse(body, null);
+        assertSame(((DialogOutput) first.getOutputs().get(0)).getCharacter(),
+                ((DialogOutput) second.getOutputs().get(0)).getCharacter());
+        assertSame(((BehaviorOutput) first.getOutputs().get(1)).getBehavior(),
+                ((BehaviorOutput) second.getOutputs().get(1)).getBehavior());
+        assertSame(first.getEntities().get(0).getName(), second.getEntities().get(0).getName());
+    }
+
+    static void assertSameResponse(Response expected, Response actual) {
+        assertEquals(expected.getConversationId(), actual.getConversationId());
+        assertEquals(expected.getParticipantId(), actual.getParticipantId());
+        assertEquals(expected.getTimedResponseInterval(), actual.getTimedResponseInterval(), 0);
+        assertEquals(expected.getLastModified(), actual.getLastModified());
+        assertEquals(expected.getOutputs().size(), actual.getOutputs().size());
+
+        for (int i = 0; i < expected.getOutputs().size(); i++) {
+            Output e = expected.getOutputs().get(i);
+            Output a = actual.getOutputs().get(i);
+            assertEquals(e.getType(), a.getType());
+            assertEquals(e.getGuid(), a.getGuid());
+
+            if (e.getType() == OutputType.DIALOG) {
+                DialogOutput ed = (DialogOutput) e;
+                DialogOutput ad = (DialogOutput) a;
+                assertEquals(ed.getText(), ad.getText());
+                assertEquals(ed.getDuration(), ad.getDuration(), 0);
+                assertEquals(ed.getUserData(), ad.getUserData());
+                assertEquals(ed.getPhonemes().size(), ad.getPhonemes().size());
+                for (int j = 0; j < ed.getPhonemes().size(); j++) {
+                    assertEquals(ed.getPhonemes().get(j).getName(), ad.getPhonemes().get(j).getName());
+                    assertEquals(ed.getPhonemes().get(j).getSecondsSinceStart(),
+                            ad.getPhonemes().get(j).getSecondsSinceStart(), 0);
+                }
+            } else {
+                BehaviorOutput eb = (BehaviorOutput) e;
+                BehaviorOutput ab = (BehaviorOutput) a;
+                assertEquals(eb.getBehavior(), ab.getBehavior());
+                assertEquals(eb.getParameters().keySet(), ab.getParameters().keySet());
+                assertEquals(eb.getParameters().get("count").getRawValue(),
+                        ab.getParameters().get("count").getRawValue());
+            }
+        }
+
+        assertEquals(expected.getEntities().size(), actual.getEntities().size());
+        for (int i = 0; i < expected.getEntities().size(); i++) {
+            assertEquals(expected.getEntities().get(i).getName(), actual.getEntities().get(i).getName());
+            assertEquals(expected.getEntities().get(i).getType(), actual.getEntities().get(i).getType());
+        }
+    }
+
+    @Test
+    public void largeResponse() throws Exception {
+        byte[] body = buildBody(40, 200).getBytes("UTF-8");
+
+        // warm up both paths before timing them
+        for (int i = 0; i < WARMUP; i++) {
+            parseTree(body);
+            parseBody(body);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseTree(body);
+        }
+        long tree = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseBody(body);
+        }
+        long parsed = System.nanoTime() - start;
+
+        // an app without lip-sync
+        EnumSet<ResponseField> noPhonemes = EnumSet.complementOf(EnumSet.of(ResponseField.PHONEMES));
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            new ResponseParser(false, noPhonemes, null).parse(body, null);
+        }
+        long masked = System.nanoTime() - start;
+
+        // a listener that only reads top-level fields
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            new ResponseParser(true, ALL_FIELDS, null).parse(body, null).getAsrHypothesis();
+        }
+        long lazy = System.nanoTime() - start;
+
+        Log.i(Keys.TAG, String.format("%d byte body: JSONObject %.2f ms, ResponseParser %.2f ms, " +
+                "without phonemes %.2f ms, lazy %.2f ms", body.length, tree / 1e6 / ITERATIONS,
+                parsed / 1e6 / ITERATIONS, masked / 1e6 / ITERATIONS, lazy / 1e6 / ITERATIONS));
+    }
+
+    private static Response parseTree(byte[] body) throws Exception {
+        return new Response(new JSONObject(new String(body, "UTF-8")));
+    }
+
+    private static Response parseBody(byte[] body) throws Exception {
+        return new ResponseParser().parse(body, null);
+    }
+
+    /**
+     * Build a response with alternating dialog and behavior outputs, each line of dialog
+     * carrying the given number of phonemes.
+     */
+    static String buildBody(int outputs, int phonemes) throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("conversation", "c-1");
+        json.put("participant", "p-1");
+        json.put("timed_response_interval", 2.5);
+        json.put("last_modified", "Tue, 14 Mar 2017 09:26:53 +0000");
+
+        ArrayList<Object> list = new ArrayList<>();
+        for (int i = 0; i < outputs; i++) {
+            JSONObject output = new JSONObject();
+            output.put("id", "output-" + i);
+            if (i % 2 == 0) {
+                output.put("type", "dialog");
+                output.put("text", "Line number " + i + " of the conversation, with a few more words.");
+                output.put("uri", "https://example.com/audio/" + i + ".mp3");
+                output.put("character", "Rusty");
+                output.put("duration", 4.25);
+                output.put("user_data", "data-" + i);
+
+                ArrayList<Object> phonemeList = new ArrayList<>();
+                for (int j = 0; j < phonemes; j++) {
+                    JSONObject phoneme = new JSONObject();
+                    phoneme.put("name", PHONEMES[j % PHONEMES.length]);
+                    phoneme.put("seconds_since_start", j * 0.04);
+                    phonemeList.add(phoneme);
+                }
+                output.put("phonemes", new JSONArray(phonemeList));
+            } else {
+                output.put("type", "behavior");
+                output.put("behavior", "animate");
+                JSONObject parameters = new JSONObject();
+                parameters.put("name", "wave");
+                parameters.put("count", i);
+                parameters.put("loop", true);
+                output.put("parameters", parameters);
+            }
+            list.add(output);
+        }
+        json.put("outputs", new JSONArray(list));
+
+        JSONObject entities = new JSONObject();
+        entities.put("NAME", "Jack");
+        entities.put("SCORE", 12);
+        entities.put("HAPPY", true);
+        json.put("entities", entities);
+
+        return json.toString();
+    }
+
+    private static final String[] PHONEMES = {"sil", "ah", "ee", "oh", "m", "f", "l"};
+    private static final EnumSet<ResponseField> ALL_FIELDS = EnumSet.allOf(ResponseField.class);
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+}
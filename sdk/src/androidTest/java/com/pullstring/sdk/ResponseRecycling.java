@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that recycled Responses are reused with the right contents, and that using one after
+ * recycle() is caught in debug mode.
+ */
+public class ResponseRecycling {
+    @After
+    public void tearDown() {
+        Response.setRecycleDebugging(false);
+    }
+
+    @Test
+    public void reuse() throws Exception {
+        String json = ResponseParserBenchmark.buildBody(6, 20);
+        Response expected = new Response(new JSONObject(json));
+
+        Response first = parse(json);
+        ResponseParserBenchmark.assertSameResponse(expected, first);
+        ArrayList<Output> outputs = new ArrayList<>(first.getOutputs());
+        first.recycle();
+
+        Response second = parse(json);
+        ResponseParserBenchmark.assertSameResponse(expected, second);
+        assertSame(first, second);
+        for (Output output : second.getOutputs()) {
+            assertTrue(outputs.contains(output));
+        }
+    }
+
+    @Test
+    public void notPooled() throws Exception {
+        Response response = new ResponseParser().parse(
+                ResponseParserBenchmark.buildBody(2, 5).getBytes("UTF-8"), null);
+
+        // recycling a Response that wasn't pooled leaves it alone
+        response.recycle();
+        response.recycle();
+        assertEquals("c-1", response.getConversationId());
+    }
+
+    @Test
+    public void useAfterRecycle() throws Exception {
+        Response.setRecycleDebugging(true);
+        Response response = parse(ResponseParserBenchmark.buildBody(2, 5));
+        DialogOutput dialog = (DialogOutput) response.getOutputs().get(0);
+        Phoneme phoneme = dialog.getPhonemes().get(0);
+        response.recycle();
+
+        try {
+            response.getOutputs();
+            fail("Response used after recycle()");
+        } catch (IllegalStateException e) {
+            assertNotNull(e.getCause());
+        }
+
+        try {
+            dialog.getText();
+            fail("DialogOutput used after recycle()");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        try {
+            phoneme.getName();
+            fail("Phoneme used after recycle()");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        try {
+            response.recycle();
+            fail("Response recycled twice");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // quarantined rather than handed out again
+        assertNotSame(response, parse(ResponseParserBenchmark.buildBody(2, 5)));
+    }
+
+    private static Response parse(String json) throws Exception {
+        ResponseParser parser = new ResponseParser(false, EnumSet.allOf(ResponseField.class), null);
+        parser.setPooled(true);
+        return parser.parse(json.getBytes("UTF-8"), null);
+    }
+}
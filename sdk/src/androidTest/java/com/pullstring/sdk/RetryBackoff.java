@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that idempotent requests failing transiently are retried with or without a deadline,
+ * and that a retry is never slept for past the deadline.
+ */
+public class RetryBackoff {
+    @Test
+    public void retriesWithoutDeadline() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        ApiClient client = new ApiClient("https://localhost/v1/") {
+            @Override
+            HttpsURLConnection openConnection(String url) throws IOException {
+                // fails before the Web API could answer, so it is safe to retry
+                attempts.incrementAndGet();
+                throw new IOException("Connection refused");
+            }
+        };
+        client.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        client.setTimeouts(0, 0, 0);
+
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(3);
+        policy.setInitialBackoff(10);
+        policy.setMaxBackoff(10);
+        client.setRetryPolicy(policy);
+
+        ApiRequest request = new ApiRequest("conversation", null, new HashMap<String, String>(), new byte[]{'{', '}'});
+        request.setIdempotent(true);
+        request.setParser(new ResponseParser());
+        client.post(request, null);
+
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void backOffWithinDeadline() throws Exception {
+        assertTrue(new Call(0).backOff(10));
+
+        Call call = new Call(60 * 1000);
+        call.startDeadline();
+        assertTrue(call.backOff(10));
+        call.finish();
+
+        call = new Call(100);
+        call.startDeadline();
+        long start = System.currentTimeMillis();
+        assertFalse(call.backOff(1000));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        call.finish();
+    }
+}
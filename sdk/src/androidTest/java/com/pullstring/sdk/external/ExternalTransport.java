@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk.external;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.pullstring.sdk.ApiRequest;
+import com.pullstring.sdk.Conversation;
+import com.pullstring.sdk.DialogOutput;
+import com.pullstring.sdk.OpenStreamListener;
+import com.pullstring.sdk.Request;
+import com.pullstring.sdk.RequestHandle;
+import com.pullstring.sdk.Response;
+import com.pullstring.sdk.ResponseField;
+import com.pullstring.sdk.ResponseListener;
+import com.pullstring.sdk.Transport;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that a Transport written outside the SDK's package can turn raw HTTP answers into
+ * Responses, honoring the options of the Request each request was made with.
+ */
+public class ExternalTransport {
+    @Test
+    public void parsesWithRequestOptions() throws Exception {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("location", "conversation/c-1");
+        CannedTransport transport = new CannedTransport(200, headers, "{\"conversation\": \"c-1\"," +
+                " \"participant\": \"p-1\", \"outputs\": [{\"type\": \"dialog\", \"id\": \"o-1\"," +
+                " \"text\": \"Hi\"}], \"entities\": {\"SCORE\": 1}}");
+
+        Request request = new Request("api-key");
+        request.setLazyResponses(true);
+        request.setResponseFields(EnumSet.complementOf(EnumSet.of(ResponseField.ENTITIES)));
+
+        Response response = transport.send(request);
+        assertTrue(response.getStatus().isSuccess());
+        assertEquals("c-1", response.getConversationId());
+        assertEquals("conversation/c-1", response.getEndpoint());
+        assertEquals("Hi", ((DialogOutput) response.getOutputs().get(0)).getText());
+
+        // entities were left out of the Request's fields, so they aren't decoded
+        assertTrue(response.getEntities() == null || response.getEntities().isEmpty());
+    }
+
+    @Test
+    public void parsesErrors() throws Exception {
+        CannedTransport transport = new CannedTransport(404, null,
+                "{\"error\": {\"status\": 404, \"message\": \"Project not found\"}}");
+
+        Response response = transport.send(new Request("api-key"));
+        assertFalse(response.getStatus().isSuccess());
+        assertEquals(404, response.getStatus().getStatusCode());
+        assertEquals("Project not found", response.getStatus().getErrorMessage());
+    }
+
+    /**
+     * Answers every request with the same HTTP status, headers and body, as an HTTP stack would
+     */
+    private static class CannedTransport extends Transport {
+        CannedTransport(int status, Map<String, String> headers, String body) throws Exception {
+            mStatus = status;
+            mHeaders = headers;
+            mBody = body.getBytes("UTF-8");
+        }
+
+        Response send(Request request) throws Exception {
+            final CountDownLatch done = new CountDownLatch(1);
+            final Response[] received = new Response[1];
+            Conversation conversation = new Conversation(new ResponseListener() {
+                @Override
+                public void onResponse(Response response) {
+                    received[0] = response;
+                    done.countDown();
+                }
+            }, this);
+
+            conversation.start("project", request);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            return received[0];
+        }
+
+        @Override
+        public RequestHandle post(final ApiRequest request, final ResponseListener listener) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Response response = request.parseResponse(mStatus, mHeaders, mBody);
+                    mMainThread.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onResponse(response);
+                        }
+                    });
+                }
+            }).start();
+            return new RequestHandle() {
+                @Override
+                public void cancel() {
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public RequestHandle openStream(ApiRequest request, OpenStreamListener openListener,
+                                        ResponseListener listener) {
+            throw new UnsupportedOperationException();
+        }
+
+        private final int mStatus;
+        private final Map<String, String> mHeaders;
+        private final byte[] mBody;
+        private final Handler mMainThread = new Handler(Looper.getMainLooper());
+    }
+}
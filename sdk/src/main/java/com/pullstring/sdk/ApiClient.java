@@ -6,17 +6,16 @@
  */
 package com.pullstring.sdk;
 
-import android.os.AsyncTask;
-
-import org.json.JSONObject;
-
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
-import java.net.URL;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -24,95 +23,311 @@ import javax.net.ssl.HttpsURLConnection;
  * Encapsulate a REST request to the PullString Web API.
  */
 class ApiClient extends HttpClient {
-    ApiClient(String baseUrl, final ResponseListener listener) {
-        super(baseUrl, listener);
+    ApiClient(String baseUrl) {
+        super(baseUrl);
     }
 
     /**
-     * asynchronously POST JSON to the Web API
+     * asynchronously POST a request (JSON or raw bytes, such as an audio file) to the Web API
      *
-     * @param endpoint The path of the Web API endpoint to hit
-     * @param parameters The request's query string
-     * @param headers Additional HTTPS headers
-     * @param body JSONObject body
+     * @param request The request to send
+     * @param listener Receives the Response on the main thread
+     * @return A handle to cancel the request with
      */
-    void post(String endpoint, HashMap<String, String> parameters, Map<String,String> headers, JSONObject body) {
-        ApiRequest request = new ApiRequest(endpoint, parameters, headers, body);
-        new ApiRequestTask().execute(request);
+    RequestHandle post(final ApiRequest request, final ResponseListener listener) {
+        final Call call = newCall(request);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // the body is parsed on the parse pool, freeing this thread for the next request
+                postSync(request, call).deliver(listener);
+            }
+        });
+        return call;
     }
 
     /**
-     * asynchronously POST raw bytes (such as an audio file) to the Web API
-     *
-     * @param endpoint The path of the Web API endpoint to hit
-     * @param parameters The request's query string
-     * @param headers Additional HTTPS headers
-     * @param body Request body as raw bytes.
+     * Asynchronously connect to the Web API and leave the socket in the keep-alive pool, so the
+     * next request skips DNS, TCP and TLS setup. Does nothing if a prewarm is already running.
+     */
+    void prewarm() {
+        if (!mPrewarming.compareAndSet(false, true)) {
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prewarmSync();
+                } finally {
+                    mPrewarming.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send a HEAD request to the base URL. Whatever the Web API answers, the connection it
+     * arrived on is returned to the pool.
+     */
+    private void prewarmSync() {
+        // if every slot is taken, connections are already open and nothing needs warming
+        ConnectionPermits permits = getConnectionPermits();
+        if (permits != null && !permits.tryAcquire()) {
+            return;
+        }
+
+        HttpsURLConnection connection = null;
+        boolean failed = false;
+        try {
+            connection = openConnection(getBaseUrl());
+            applyTimeouts(connection, new Call(0));
+            connection.setRequestMethod(PREWARM_METHOD);
+            acceptCompressed(connection);
+            if (connection.getResponseCode() < 400) {
+                drain(connection.getInputStream());
+            }
+        } catch (IOException e) {
+            failed = true;
+        } catch (Exception e) {
+            // most likely a malformed url, which the first real request will report
+            failed = true;
+        } finally {
+            release(connection, failed);
+            releasePermit(permits);
+        }
+    }
+
+    /**
+     * Gzip JSON request bodies of at least this many bytes. 0 disables request compression.
+     */
+    void setCompressionThreshold(int threshold) {
+        mCompressionThreshold = threshold;
+        mCompressionRejected = false;
+    }
+
+    /**
+     * Set how idempotent requests are retried and hedged.
+     */
+    void setRetryPolicy(RetryPolicy policy) {
+        mRetryPolicy = policy;
+    }
+
+    /**
+     * Set the executor hedged copies of requests are sent on. It must not queue behind the
+     * request executor, since the original request holds one of its threads while it waits.
      */
-    void post(String endpoint, HashMap<String, String> parameters, Map<String,String> headers, byte[] body) {
-        ApiRequest request = new ApiRequest(endpoint, parameters, headers, body);
-        new ApiRequestTask().execute(request);
+    void setHedgeExecutor(Executor executor) {
+        mHedgeExecutor = executor;
     }
 
     /**
-     * POST JSON or bytes to the Web API depending on contents of request
+     * POST to the Web API once a connection slot is available, retrying idempotent requests
+     * that fail transiently. Gives up waiting for a slot if the request is cancelled or runs out
+     * of time.
      */
-    private Response postSync(ApiRequest request) {
-        if (request.json != null) {
-            return postSync(request.endpoint, request.parameters, request.headers, request.json);
-        } else if (request.bytes != null) {
-            return postSync(request.endpoint, request.parameters, request.headers, request.bytes);
+    private ReceivedResponse postSync(ApiRequest request, Call call) {
+        // the deadline covers waiting for a slot too, so a full pool can't hold a request forever
+        call.startDeadline();
+
+        ConnectionPermits permits = getConnectionPermits();
+        if (permits != null && !permits.acquire(call)) {
+            call.finish();
+            Response interrupted = call.getInterruptedResponse();
+            return new ReceivedResponse(interrupted != null ? interrupted
+                    : getErrorResponse(Status.InternalError.CANCELLED.getValue(), "Request cancelled"));
         }
 
-        return getErrorResponse(Status.InternalError.BAD_REQUEST.getValue(), "Request body must not be null");
+        try {
+            RetryPolicy policy = mRetryPolicy;
+            int maxAttempts = request.isIdempotent() ? policy.getMaxAttempts() : 1;
+            ReceivedResponse response = null;
+
+            for (int attempt = 1; !call.isInterrupted(); attempt++) {
+                Attempt result = request.isIdempotent() ? sendHedged(request, call, policy) : sendOnce(request, call);
+                response = result.mResponse;
+                if (!result.mRetryable || attempt >= maxAttempts) {
+                    break;
+                }
+
+                // give up rather than sleep past the deadline
+                if (!call.backOff(policy.getBackoff(attempt, mRandom))) {
+                    break;
+                }
+            }
+
+            // whatever error the aborted connection produced, report why it was aborted
+            Response interrupted = call.getInterruptedResponse();
+            return interrupted != null ? new ReceivedResponse(interrupted) : response;
+        } finally {
+            call.finish();
+            releasePermit(permits);
+        }
     }
 
     /**
-     * POST JSON to the Web API.
+     * Send a single attempt at a request on the calling thread.
      */
-    private Response postSync(String endpoint, Map<String, String> parameters, Map<String,String> headers, JSONObject body) {
+    private Attempt sendOnce(ApiRequest request, Call call) {
+        Call attempt = call.newAttempt();
+        long start = System.currentTimeMillis();
         try {
-            // convert JSONObject to bytes and send
-            String jsonString = body.toString();
-            byte data[] = jsonString.getBytes(ENCODING);
-            return postSync(endpoint, parameters, headers, data);
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-            return getErrorResponse(Status.InternalError.ENCODING.getValue(), e.getLocalizedMessage());
+            ReceivedResponse response = send(request, attempt, true);
+            // only requests that may be hedged set the hedge delay, so turns and audio don't skew it
+            if (request.isIdempotent() && !attempt.isRetryable() && !attempt.isInterrupted()) {
+                mLatencies.add(System.currentTimeMillis() - start);
+            }
+            return new Attempt(response, attempt.isRetryable());
+        } finally {
+            attempt.finish();
         }
     }
 
+    /**
+     * Send an attempt at a request, and if it is slower than most recent requests, race a second
+     * copy against it on the hedge executor. Whichever copy succeeds first wins and the other is
+     * aborted. The copy needs a connection slot of its own, and is only sent if one is free.
+     */
+    private Attempt sendHedged(final ApiRequest request, Call call, RetryPolicy policy) {
+        final Executor hedgeExecutor = mHedgeExecutor;
+        long delay = policy.getHedgePercentile() > 0 ? mLatencies.percentile(policy.getHedgePercentile()) : -1;
+        if (hedgeExecutor == null || delay < 0) {
+            return sendOnce(request, call);
+        }
+        delay = Math.max(delay, policy.getMinHedgeDelay());
+
+        final Call primary = call.newAttempt();
+        final Call hedge = call.newAttempt();
+        final Race race = new Race();
+
+        ScheduledFuture<?> timer = SdkExecutors.watchdog().schedule(new Runnable() {
+            @Override
+            public void run() {
+                // a hedge isn't worth waiting for a slot, since the original already holds one
+                final ConnectionPermits permits = getConnectionPermits();
+                if (permits != null && !permits.tryAcquire()) {
+                    hedge.finish();
+                    race.forfeit();
+                    return;
+                }
+
+                try {
+                    hedgeExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                race.finish(sendOnce(request, hedge), primary);
+                            } finally {
+                                hedge.finish();
+                                releasePermit(permits);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // no capacity to hedge, so just wait for the original
+                    releasePermit(permits);
+                    hedge.finish();
+                    race.forfeit();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        Attempt result;
+        try {
+            result = sendOnce(request, primary);
+        } finally {
+            primary.finish();
+        }
+
+        if (timer.cancel(false)) {
+            // answered before the hedge was due
+            hedge.finish();
+            return result;
+        }
+
+        race.finish(result, hedge);
+        return race.await();
+    }
+
+    /**
+     * Decide whether a request body should be sent gzipped
+     */
+    private boolean shouldCompress(ApiRequest request, byte[] body) {
+        int threshold = mCompressionThreshold;
+        if (threshold <= 0 || body.length < threshold || mCompressionRejected) {
+            return false;
+        }
+
+        // audio barely compresses, so only bother with JSON
+        String contentType = request.getHeaders().get(CONTENT_TYPE);
+        return contentType != null && contentType.startsWith(JSON_CONTENT_TYPE);
+    }
+
     /**
      * POST bytes to the Web API.
      */
-    private Response postSync(String endpoint, final Map<String, String> parameters, Map<String, String> headers, byte[] body) {
-        String urlStr = getUrl(endpoint, parameters);
+    private ReceivedResponse send(ApiRequest request, Call call, boolean allowCompression) {
+        byte[] body = request.getBody();
+        if (body == null) {
+            return new ReceivedResponse(getErrorResponse(Status.InternalError.BAD_REQUEST.getValue(),
+                    "Request body must not be null"));
+        }
+
+        String urlStr = getUrl(request);
         HttpsURLConnection connection = null;
         String errString = null;
         int statusCode = DEFAULT_SUCCESS_CODE;
-        Response response = null;
+        ReceivedResponse response = null;
+        boolean compressed = allowCompression && shouldCompress(request, body);
+        boolean resendUncompressed = false;
+        boolean answered = false;
 
         try {
-            URL url = new URL(urlStr);
-            connection = (HttpsURLConnection) url.openConnection();
+            connection = openConnection(urlStr);
+            call.setConnection(connection);
+            applyTimeouts(connection, call);
 
             // add headers
-            for (Map.Entry<String, String> kv : headers.entrySet()) {
+            for (Map.Entry<String, String> kv : request.getHeaders().entrySet()) {
                 connection.setRequestProperty(kv.getKey(), kv.getValue());
             }
+            acceptCompressed(connection);
+
+            byte[] data = body;
+            if (compressed) {
+                data = compress(body);
+                connection.setRequestProperty(CONTENT_ENCODING, GZIP);
+            }
 
             // write body to output stream
             connection.setDoOutput(true);
             connection.setRequestMethod(REQUEST_METHOD);
-            connection.setFixedLengthStreamingMode(body.length);
+            connection.setFixedLengthStreamingMode(data.length);
             OutputStream out = new BufferedOutputStream(connection.getOutputStream());
-            out.write(body);
+            out.write(data);
             out.close();
 
-            // get the raw response and parse into Response object
+            TransportMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.addRequest(body.length, data.length);
+            }
+
+            // read the raw response, leaving it to be parsed off this thread
             statusCode = connection.getResponseCode();
-            response = parse(connection);
+            answered = true;
+            call.setRetryable(isRetryableStatus(statusCode));
+
+            if (compressed && statusCode == UNSUPPORTED_MEDIA_TYPE) {
+                // the server won't take gzipped bodies, so stop sending them
+                mCompressionRejected = true;
+                resendUncompressed = true;
+            } else {
+                response = receive(connection, request.getParser());
+            }
         } catch (IOException e) {
+            // the connection failed before the Web API could answer, so it is safe to try again
+            call.setRetryable(!answered);
             if (connection != null) {
                 try {
                     errString = connection.getResponseMessage();
@@ -120,35 +335,112 @@ class ApiClient extends HttpClient {
                     errString = e2.getLocalizedMessage();
                 }
             }
+            if (errString == null) {
+                // no connection or status line to describe the failure, so report the exception
+                errString = String.valueOf(e.getLocalizedMessage());
+            }
         } catch (Exception e) {
             errString = e.getLocalizedMessage();
             statusCode = DEFAULT_ERROR_CODE;
         } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+            // keep the socket alive for the next request unless something went wrong
+            release(connection, errString != null);
 
             // If we've received an error, create a new Response with failure status
             if (errString != null) {
-                response = getErrorResponse(statusCode, errString);
+                response = new ReceivedResponse(getErrorResponse(statusCode, errString));
             }
         }
 
+        if (resendUncompressed) {
+            return send(request, call, false);
+        }
+
         return response;
     }
 
     /**
-     * Execute requests to the Web API in the background
+     * Gateway errors mean the request never reached a healthy server
+     */
+    private static boolean isRetryableStatus(int statusCode) {
+        return statusCode == BAD_GATEWAY || statusCode == SERVICE_UNAVAILABLE || statusCode == GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * The outcome of one attempt at a request
+     */
+    private static class Attempt {
+        Attempt(ReceivedResponse response, boolean retryable) {
+            mResponse = response;
+            mRetryable = retryable;
+        }
+
+        final ReceivedResponse mResponse;
+        final boolean mRetryable;
+    }
+
+    /**
+     * Pick the winner of a request and its hedged copy: the first attempt that did not fail
+     * transiently, or the last one to finish if both did.
      */
-    private class ApiRequestTask extends AsyncTask<ApiRequest, Void, Response> {
-        @Override
-        protected Response doInBackground(ApiRequest... requests) {
-            return postSync(requests[0]);
+    private static class Race {
+        synchronized void finish(Attempt attempt, Call other) {
+            mFinished++;
+            mLast = attempt;
+            if (mWinner != null) {
+                return;
+            }
+
+            if (!attempt.mRetryable || mFinished >= mEntrants) {
+                mWinner = attempt;
+                other.cancel();
+                notifyAll();
+            }
         }
 
-        @Override
-        protected void onPostExecute(Response response) {
-            mListener.onResponse(response);
+        /**
+         * The hedged copy never started, so the original decides the race alone.
+         */
+        synchronized void forfeit() {
+            mEntrants = 1;
+            if (mWinner == null && mLast != null) {
+                mWinner = mLast;
+            }
+            notifyAll();
         }
+
+        synchronized Attempt await() {
+            while (mWinner == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return new Attempt(new ReceivedResponse(getErrorResponse(
+                            Status.InternalError.CANCELLED.getValue(), "Request cancelled")), false);
+                }
+            }
+            return mWinner;
+        }
+
+        private Attempt mWinner;
+        private Attempt mLast;
+        private int mFinished;
+        private int mEntrants = 2;
     }
+
+    private volatile int mCompressionThreshold;
+    private volatile boolean mCompressionRejected;
+    private volatile RetryPolicy mRetryPolicy = new RetryPolicy();
+    private volatile Executor mHedgeExecutor;
+    private final AtomicBoolean mPrewarming = new AtomicBoolean();
+    private final LatencyTracker mLatencies = new LatencyTracker();
+    private final Random mRandom = new Random();
+
+    private static final String PREWARM_METHOD = "HEAD";
+    private static final int BAD_GATEWAY = 502;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int GATEWAY_TIMEOUT = 504;
+
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String JSON_CONTENT_TYPE = "application/json";
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+/**
+ * Encapsulate a single Web API request as it is handed to a Transport. The same object is used
+ * whether sending JSON, an audio file, or opening an audio stream.
+ */
+public class ApiRequest {
+    /**
+     * Request with a body
+     */
+    ApiRequest(String endpoint, Map<String, String> parameters, Map<String, String> headers, byte[] body) {
+        mEndpoint = endpoint;
+        mParameters = parameters;
+        mHeaders = headers;
+        mBody = body;
+    }
+
+    /**
+     * Request built from a Request's cached envelope
+     * @param isAudio true for an audio body or stream, false for JSON.
+     * @param withQuery Whether to send the envelope's query parameters.
+     */
+    ApiRequest(RequestEnvelope envelope, boolean isAudio, boolean withQuery, byte[] body) {
+        this(envelope.getEndpoint(), withQuery ? envelope.getParameters() : null,
+                envelope.getHeaders(isAudio), body);
+        mEnvelope = envelope;
+        mWithQuery = withQuery;
+    }
+
+    /**
+     * Request with no body or parameters (i.e., for opening a stream)
+     */
+    ApiRequest(String endpoint, Map<String, String> headers) {
+        this(endpoint, null, headers, null);
+    }
+
+    /**
+     * Get the path of the Web API endpoint, relative to the base URL.
+     * @return The endpoint path.
+     */
+    public String getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Get the parameters to send in the query string.
+     * @return A Map of query parameters, or null if there are none.
+     */
+    public Map<String, String> getParameters() {
+        return mParameters;
+    }
+
+    /**
+     * Get the HTTP headers to send with the request.
+     * @return A Map of header names to values.
+     */
+    public Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    /**
+     * Get the encoded request body.
+     * @return The body as raw bytes, or null if the request has no body.
+     */
+    public byte[] getBody() {
+        return mBody;
+    }
+
+    /**
+     * Get the overall deadline for this request, covering connecting, the TLS handshake,
+     * uploading the body, and reading the response.
+     * @return The deadline in milliseconds, or 0 to use the Transport's default.
+     */
+    public long getTimeout() {
+        return mTimeout;
+    }
+
+    void setTimeout(long timeout) {
+        mTimeout = timeout;
+    }
+
+    /**
+     * Check whether sending this request more than once has the same effect as sending it once,
+     * so a Transport may retry or hedge it.
+     * @return true if the request does not change conversation state.
+     */
+    public boolean isIdempotent() {
+        return mIdempotent;
+    }
+
+    void setIdempotent(boolean idempotent) {
+        mIdempotent = idempotent;
+    }
+
+    /**
+     * Turn the Web API's answer to this request into a Response, decoded the way the Request it
+     * was made with asks for: lazily, limited to its ResponseFields, or from recycled objects.
+     * Transports that make their own HTTP calls use this to build the Response they pass to
+     * their listener. The body is parsed on the calling thread, so call this off the main
+     * thread.
+     * @param status The HTTP status code.
+     * @param headers The response headers, or null. Only Location is used.
+     * @param body The response body, already decompressed.
+     * @return The Response. Errors, including a body that can't be parsed, are reported in its
+     * Status.
+     */
+    public Response parseResponse(int status, Map<String, String> headers, byte[] body) {
+        if (body == null) {
+            body = new byte[0];
+        }
+
+        if (status >= HTTP_ERROR) {
+            try {
+                return HttpClient.parseError(new String(body, HttpClient.ENCODING));
+            } catch (UnsupportedEncodingException e) {
+                return HttpClient.getErrorResponse(Status.InternalError.ENCODING.getValue(), e.getLocalizedMessage());
+            }
+        }
+
+        String endpoint = null;
+        if (headers != null) {
+            for (Map.Entry<String, String> kv : headers.entrySet()) {
+                if (Keys.LocationHeader.equalsIgnoreCase(kv.getKey())) {
+                    endpoint = kv.getValue();
+                }
+            }
+        }
+
+        ResponseParser parser = mParser != null ? mParser : new ResponseParser();
+        return new ReceivedResponse(body, endpoint, parser).parse();
+    }
+
+    /**
+     * Get the parser the response should be read with, or null for the default.
+     */
+    ResponseParser getParser() {
+        return mParser;
+    }
+
+    void setParser(ResponseParser parser) {
+        mParser = parser;
+    }
+
+    /**
+     * Build the full URL for this request.
+     * @param baseUrl The base URL of the Web API, e.g. VersionInfo.API_BASE_URL.
+     * @return The absolute URL, including the query string.
+     */
+    public String getUrl(String baseUrl) {
+        if (mEnvelope != null) {
+            return mEnvelope.getUrl(baseUrl, mWithQuery);
+        }
+        return HttpClient.getUrl(baseUrl, mEndpoint, mParameters);
+    }
+
+    private final String mEndpoint;
+    private final Map<String, String> mParameters;
+    private final Map<String, String> mHeaders;
+    private final byte[] mBody;
+    private long mTimeout;
+    private boolean mIdempotent;
+    private ResponseParser mParser;
+    private RequestEnvelope mEnvelope;
+    private boolean mWithQuery;
+
+    private static final int HTTP_ERROR = 400;
+}
@@ -43,6 +43,7 @@ public class BehaviorOutput extends Output {
      * @return A Map&lt;String, ParameterValue&gt; of parameters
      */
     public HashMap<String, ParameterValue> getParameters() {
+        checkNotRecycled();
         return mParameters;
     }
 
@@ -51,10 +52,13 @@ public class BehaviorOutput extends Output {
     }
 
     /**
-     * Get the name of the behavior.
+     * Get the name of the behavior. Within a conversation, the same name is normally returned
+     * as the same String instance every time, so dispatching on it is cheap; equals() always
+     * works.
      * @return A String representing the name of the behavior.
      */
     public String getBehavior() {
+        checkNotRecycled();
         return mBehavior;
     }
 
@@ -66,7 +70,31 @@ public class BehaviorOutput extends Output {
         mBehavior = behavior;
     }
 
+    /**
+     * Reset a pooled BehaviorOutput before the parser fills it in again.
+     */
+    synchronized void revive() {
+        mRecycled = false;
+        mRecycledAt = null;
+    }
+
+    /**
+     * @throws IllegalStateException If the BehaviorOutput was already recycled.
+     */
+    synchronized void markRecycled(Throwable recycledAt) {
+        checkNotRecycled();
+        mRecycled = true;
+        mRecycledAt = recycledAt;
+        mParameters = null;
+    }
+
+    private void checkNotRecycled() {
+        ResponsePool.checkNotRecycled(mRecycled, mRecycledAt);
+    }
+
     private String mBehavior;
     private HashMap<String, ParameterValue> mParameters;
     private final OutputType mType = OutputType.BEHAVIOR;
+    private volatile boolean mRecycled;
+    private Throwable mRecycledAt;
 }
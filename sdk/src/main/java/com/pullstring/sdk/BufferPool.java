@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of byte buffers for reading bodies, so that every response doesn't allocate (and
+ * the GC later collect) its own scratch space. Only standard-sized buffers are pooled; larger
+ * requests get a buffer of exactly the size asked for.
+ */
+class BufferPool {
+    /**
+     * Get a buffer of at least the given size.
+     */
+    static byte[] acquire(int minSize) {
+        if (minSize <= BUFFER_SIZE) {
+            synchronized (sFree) {
+                byte[] buffer = sFree.poll();
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+            return new byte[BUFFER_SIZE];
+        }
+        return new byte[minSize];
+    }
+
+    /**
+     * Return a buffer to the pool once it is no longer used. Buffers that weren't handed out by
+     * acquire() are ignored.
+     */
+    static void release(byte[] buffer) {
+        if (buffer == null || buffer.length != BUFFER_SIZE) {
+            return;
+        }
+
+        synchronized (sFree) {
+            if (sFree.size() < MAX_POOLED) {
+                sFree.push(buffer);
+            }
+        }
+    }
+
+    static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED = 4;
+    private static final ArrayDeque<byte[]> sFree = new ArrayDeque<>();
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Track a single request made over HttpURLConnection so it can be cancelled or timed out. Both
+ * work by disconnecting the connection, which makes any blocked read or write fail right away.
+ * A request that is retried or hedged sends each copy as a separate attempt, which is
+ * interrupted along with the request.
+ */
+class Call extends RequestHandle {
+    /**
+     * @param timeout The overall deadline for the request, in milliseconds, or 0 for none.
+     */
+    Call(long timeout) {
+        mTimeout = timeout;
+        mParent = null;
+    }
+
+    private Call(Call parent) {
+        mTimeout = 0;
+        mParent = parent;
+    }
+
+    /**
+     * Start a new attempt at this request, with its own connection. The attempt shares this
+     * call's deadline and is aborted if this call is cancelled or times out.
+     */
+    Call newAttempt() {
+        Call attempt = new Call(this);
+        boolean interrupted;
+        synchronized (this) {
+            interrupted = mCancelled || mTimedOut;
+            if (!interrupted) {
+                if (mAttempts == null) {
+                    mAttempts = new ArrayList<>();
+                }
+                mAttempts.add(attempt);
+            }
+        }
+
+        if (interrupted) {
+            attempt.cancel();
+        }
+        return attempt;
+    }
+
+    /**
+     * Record whether this attempt failed in a way that is worth retrying.
+     */
+    synchronized void setRetryable(boolean retryable) {
+        mRetryable = retryable;
+    }
+
+    synchronized boolean isRetryable() {
+        return mRetryable;
+    }
+
+    /**
+     * Wait before retrying, waking early if the request is cancelled or times out.
+     * @return true if the full delay passed and the request may go on.
+     */
+    synchronized boolean sleep(long delay) {
+        long until = System.currentTimeMillis() + delay;
+        long left = delay;
+        while (left > 0 && !mCancelled && !mTimedOut) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            left = until - System.currentTimeMillis();
+        }
+        return !mCancelled && !mTimedOut;
+    }
+
+    /**
+     * Wait before retrying, unless the wait would run past the deadline. Without a deadline,
+     * only cancelling stops the retry.
+     * @return true if the full delay passed and the request may be retried.
+     */
+    boolean backOff(long delay) {
+        if (delay >= remaining(Integer.MAX_VALUE)) {
+            return false;
+        }
+        return sleep(delay);
+    }
+
+    /**
+     * Start the clock on the overall deadline.
+     */
+    synchronized void startDeadline() {
+        if (mTimeout <= 0 || mFinished || mDeadline != null) {
+            return;
+        }
+
+        mDeadlineAt = System.currentTimeMillis() + mTimeout;
+        mDeadline = SdkExecutors.watchdog().schedule(new Runnable() {
+            @Override
+            public void run() {
+                timeOut();
+            }
+        }, mTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the time left before the deadline, to clamp socket timeouts to.
+     * @return The remaining time in milliseconds, or fallback if there is no deadline running.
+     */
+    int remaining(int fallback) {
+        if (mParent != null) {
+            return mParent.remaining(fallback);
+        }
+        return remainingOwn(fallback);
+    }
+
+    private synchronized int remainingOwn(int fallback) {
+        if (mDeadline == null) {
+            return fallback;
+        }
+
+        long left = Math.max(1, mDeadlineAt - System.currentTimeMillis());
+        return fallback > 0 ? (int) Math.min(fallback, left) : (int) Math.min(Integer.MAX_VALUE, left);
+    }
+
+    /**
+     * Register the connection to abort if the request is cancelled or times out.
+     */
+    void setConnection(HttpURLConnection connection) {
+        boolean interrupted;
+        synchronized (this) {
+            mConnection = connection;
+            interrupted = mCancelled || mTimedOut;
+        }
+
+        if (interrupted) {
+            abort(connection);
+        }
+    }
+
+    /**
+     * Register something to wake if the request is cancelled or times out while it waits, such
+     * as a wait for a free connection. Pass null once the wait is over.
+     */
+    void setWaiter(Runnable waiter) {
+        boolean interrupted;
+        synchronized (this) {
+            interrupted = waiter != null && (mCancelled || mTimedOut);
+            mWaiter = interrupted ? null : waiter;
+        }
+
+        if (interrupted) {
+            waiter.run();
+        }
+    }
+
+    /**
+     * Mark the request complete. Cancelling has no effect after this.
+     */
+    void finish() {
+        synchronized (this) {
+            mFinished = true;
+            mConnection = null;
+            mAttempts = null;
+            mWaiter = null;
+            if (mDeadline != null) {
+                mDeadline.cancel(false);
+            }
+        }
+
+        if (mParent != null) {
+            mParent.removeAttempt(this);
+        }
+    }
+
+    private synchronized void removeAttempt(Call attempt) {
+        if (mAttempts != null) {
+            mAttempts.remove(attempt);
+        }
+    }
+
+    /**
+     * Check whether the request was cancelled or ran out of time.
+     */
+    synchronized boolean isInterrupted() {
+        return mCancelled || mTimedOut;
+    }
+
+    /**
+     * Get the Response to deliver in place of whatever the interrupted request produced.
+     * @return A failed Response, or null if the request was not interrupted.
+     */
+    synchronized Response getInterruptedResponse() {
+        if (mCancelled) {
+            return HttpClient.getErrorResponse(Status.InternalError.CANCELLED.getValue(), "Request cancelled");
+        } else if (mTimedOut) {
+            return HttpClient.getErrorResponse(Status.InternalError.TIMEOUT.getValue(),
+                    "Request timed out after " + mTimeout + " ms");
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancel() {
+        HttpURLConnection connection;
+        List<Call> attempts;
+        Runnable waiter;
+        synchronized (this) {
+            if (mFinished || mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            connection = mConnection;
+            attempts = detachAttempts();
+            waiter = detachWaiter();
+            notifyAll();
+        }
+
+        interrupt(connection, attempts, waiter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    private void timeOut() {
+        HttpURLConnection connection;
+        List<Call> attempts;
+        Runnable waiter;
+        synchronized (this) {
+            if (mFinished || mCancelled) {
+                return;
+            }
+            mTimedOut = true;
+            connection = mConnection;
+            attempts = detachAttempts();
+            waiter = detachWaiter();
+            notifyAll();
+        }
+
+        interrupt(connection, attempts, waiter);
+    }
+
+    private List<Call> detachAttempts() {
+        List<Call> attempts = mAttempts;
+        mAttempts = null;
+        return attempts;
+    }
+
+    private Runnable detachWaiter() {
+        Runnable waiter = mWaiter;
+        mWaiter = null;
+        return waiter;
+    }
+
+    private static void interrupt(HttpURLConnection connection, List<Call> attempts, Runnable waiter) {
+        if (waiter != null) {
+            waiter.run();
+        }
+        if (connection != null) {
+            abort(connection);
+        }
+        if (attempts != null) {
+            for (Call attempt : attempts) {
+                attempt.cancel();
+            }
+        }
+    }
+
+    /**
+     * Disconnect off the calling thread, since closing a TLS socket may write to the network
+     */
+    private static void abort(final HttpURLConnection connection) {
+        SdkExecutors.watchdog().execute(new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        });
+    }
+
+    private final long mTimeout;
+    private final Call mParent;
+    private List<Call> mAttempts;
+    private boolean mRetryable;
+    private long mDeadlineAt;
+    private ScheduledFuture<?> mDeadline;
+    private HttpURLConnection mConnection;
+    private Runnable mWaiter;
+    private boolean mCancelled;
+    private boolean mTimedOut;
+    private boolean mFinished;
+}
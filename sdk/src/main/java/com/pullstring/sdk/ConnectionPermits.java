@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit the number of connections a transport holds open at once. Slots are handed out in the
+ * order they were asked for. A request may wait for one on its own thread, or, like an audio
+ * stream that holds its slot for a long time, ask to be called back once one is free so that no
+ * thread is tied up waiting. Either kind of wait ends early if the request's Call is cancelled
+ * or runs out of time.
+ */
+class ConnectionPermits {
+    /**
+     * Receives the outcome of an asynchronous wait for a slot.
+     */
+    abstract static class Waiter {
+        /**
+         * A slot was taken on the waiter's behalf. It must be given back with release().
+         * Called on whichever thread released the slot, so it should only hand work off.
+         */
+        abstract void onAcquired();
+
+        /**
+         * The wait was given up, because the request was cancelled or timed out.
+         */
+        abstract void onAbandoned();
+
+        private boolean mAcquired;
+        private boolean mAbandoned;
+        private ScheduledFuture<?> mTimer;
+    }
+
+    ConnectionPermits(int maxConnections) {
+        mAvailable = maxConnections;
+    }
+
+    /**
+     * Take a slot if one is free and nobody is waiting for one.
+     * @return true if a slot was taken.
+     */
+    synchronized boolean tryAcquire() {
+        if (mAvailable > 0 && mWaiters.isEmpty()) {
+            mAvailable--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wait on the calling thread for a slot, giving up if the call is cancelled or times out.
+     * @return true if a slot was taken, false if the call was interrupted first.
+     */
+    boolean acquire(Call call) {
+        if (tryAcquire()) {
+            return true;
+        }
+
+        final Waiter waiter = new Waiter() {
+            @Override
+            void onAcquired() {
+            }
+
+            @Override
+            void onAbandoned() {
+            }
+        };
+        enqueue(waiter);
+        call.setWaiter(new Runnable() {
+            @Override
+            public void run() {
+                abandon(waiter);
+            }
+        });
+
+        try {
+            synchronized (this) {
+                while (!waiter.mAcquired && !waiter.mAbandoned) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            abandon(waiter);
+
+            synchronized (this) {
+                return waiter.mAcquired;
+            }
+        } finally {
+            call.setWaiter(null);
+        }
+    }
+
+    /**
+     * Call the waiter back once a slot is free, without blocking. The wait is given up if the
+     * call is cancelled, or if no slot comes free within the timeout.
+     * @param timeout The longest to wait in milliseconds, or 0 for no limit.
+     */
+    void acquireAsync(Call call, long timeout, final Waiter waiter) {
+        if (tryAcquire()) {
+            waiter.onAcquired();
+            return;
+        }
+
+        enqueue(waiter);
+        if (timeout > 0) {
+            ScheduledFuture<?> timer = SdkExecutors.watchdog().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    abandon(waiter);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+
+            synchronized (this) {
+                waiter.mTimer = timer;
+            }
+        }
+
+        call.setWaiter(new Runnable() {
+            @Override
+            public void run() {
+                abandon(waiter);
+            }
+        });
+    }
+
+    /**
+     * Give back a slot, handing it straight to the longest waiting request if there is one.
+     */
+    void release() {
+        Waiter next;
+        synchronized (this) {
+            next = mWaiters.poll();
+            if (next == null) {
+                mAvailable++;
+                return;
+            }
+
+            next.mAcquired = true;
+            if (next.mTimer != null) {
+                next.mTimer.cancel(false);
+            }
+            notifyAll();
+        }
+
+        next.onAcquired();
+    }
+
+    private synchronized void enqueue(Waiter waiter) {
+        mWaiters.add(waiter);
+    }
+
+    /**
+     * Stop a waiter waiting, unless it already has its slot.
+     */
+    private void abandon(Waiter waiter) {
+        synchronized (this) {
+            if (waiter.mAcquired || waiter.mAbandoned) {
+                return;
+            }
+
+            waiter.mAbandoned = true;
+            mWaiters.remove(waiter);
+            if (waiter.mTimer != null) {
+                waiter.mTimer.cancel(false);
+            }
+            notifyAll();
+        }
+
+        waiter.onAbandoned();
+    }
+
+    private final ArrayDeque<Waiter> mWaiters = new ArrayDeque<>();
+    private int mAvailable;
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+/**
+ * <p>
+ * Describe how idle keep-alive connections to the Web API are pooled and reused.
+ * </p><p>
+ * Requests made by a Conversation leave their sockets open once the response has been read, so
+ * later requests to the same host skip the TCP and TLS handshakes. The pool itself is the one
+ * shared by every HttpsURLConnection in the process, and the platform only reads its
+ * configuration when it creates the pool, for the first connection made. The default
+ * configuration is applied as soon as the SDK's transport is first used, and setDefault() must
+ * be called before the first request anywhere in the process to have any effect.
+ * </p><p>
+ * Example:
+ * </p><pre><code>
+ * // keep up to 8 idle sockets around for 2 minutes each
+ * ConnectionPool.setDefault(new ConnectionPool(8, 2 * 60 * 1000));
+ * </code></pre>
+ */
+public class ConnectionPool {
+    /**
+     * Constructor
+     * @param maxIdleConnections The maximum number of idle connections kept per host.
+     * @param keepAliveDuration How long, in milliseconds, an idle connection is kept before it is
+     *                          evicted from the pool.
+     */
+    public ConnectionPool(int maxIdleConnections, long keepAliveDuration) {
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("maxIdleConnections < 0: " + maxIdleConnections);
+        }
+        if (keepAliveDuration <= 0) {
+            throw new IllegalArgumentException("keepAliveDuration <= 0: " + keepAliveDuration);
+        }
+
+        mMaxIdleConnections = maxIdleConnections;
+        mKeepAliveDuration = keepAliveDuration;
+    }
+
+    /**
+     * Get the maximum number of idle connections kept per host.
+     * @return The maximum number of idle connections.
+     */
+    public int getMaxIdleConnections() {
+        return mMaxIdleConnections;
+    }
+
+    /**
+     * Get how long an idle connection is kept before being evicted.
+     * @return The keep-alive duration, in milliseconds.
+     */
+    public long getKeepAliveDuration() {
+        return mKeepAliveDuration;
+    }
+
+    /**
+     * Get the pool configuration currently in use.
+     * @return The current ConnectionPool.
+     */
+    public static synchronized ConnectionPool getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Replace the pool configuration used for all connections to the Web API. Setting a
+     * maximum of 0 idle connections disables keep-alive altogether. This must be called before
+     * the first request is made, since the platform ignores changes once its pool exists.
+     * @param pool The new ConnectionPool configuration.
+     */
+    public static synchronized void setDefault(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool == null");
+        }
+
+        sDefault = pool;
+        sApplied = true;
+        pool.apply();
+    }
+
+    /**
+     * Apply the default configuration, unless setDefault() already applied one. Called before
+     * the SDK makes its first connection. Properties the app set itself are left alone.
+     */
+    static synchronized void applyDefault() {
+        if (sApplied) {
+            return;
+        }
+
+        sApplied = true;
+        setIfAbsent(KEEP_ALIVE, Boolean.toString(sDefault.mMaxIdleConnections > 0));
+        setIfAbsent(MAX_CONNECTIONS, Integer.toString(sDefault.mMaxIdleConnections));
+        setIfAbsent(KEEP_ALIVE_DURATION, Long.toString(sDefault.mKeepAliveDuration));
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * The platform HttpURLConnection reads its pool configuration from these system properties
+     * when the pool is created.
+     */
+    private void apply() {
+        System.setProperty(KEEP_ALIVE, Boolean.toString(mMaxIdleConnections > 0));
+        System.setProperty(MAX_CONNECTIONS, Integer.toString(mMaxIdleConnections));
+        System.setProperty(KEEP_ALIVE_DURATION, Long.toString(mKeepAliveDuration));
+    }
+
+    private final int mMaxIdleConnections;
+    private final long mKeepAliveDuration;
+
+    static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    static final long DEFAULT_KEEP_ALIVE_DURATION = 5 * 60 * 1000;
+
+    private static ConnectionPool sDefault = new ConnectionPool(DEFAULT_MAX_IDLE_CONNECTIONS,
+            DEFAULT_KEEP_ALIVE_DURATION);
+    private static boolean sApplied;
+
+    static final String KEEP_ALIVE = "http.keepAlive";
+    static final String MAX_CONNECTIONS = "http.maxConnections";
+    static final String KEEP_ALIVE_DURATION = "http.keepAliveDuration";
+}
@@ -8,16 +8,12 @@
  */
 package com.pullstring.sdk;
 
-import android.util.Log;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -30,6 +26,10 @@ import java.util.Map;
  * dialog or behaviors. This Response object is passed to the onResponse callback as its sole
  * parameter.
  * </p><p>
+ * Requests are sent one at a time, in the order they are made, and responses arrive in that
+ * same order. Input can be sent without waiting for the previous response; each request is
+ * completed with the latest conversation and participant IDs just before it goes out.
+ * </p><p>
  * Example:
  * </p><pre><code>
  * // create a Request with a valid API key
@@ -59,14 +59,37 @@ public class Conversation {
      * @param listener ResponseListener object that will receive all responses from the Web API.
      */
     public Conversation(ResponseListener listener) {
+        this(listener, Transport.getDefault());
+    }
+
+    /**
+     * Creates a Conversation that reaches the Web API through a specific Transport. If the
+     * Transport is set to prewarm on create, it starts connecting to the Web API right away.
+     * @param listener ResponseListener object that will receive all responses from the Web API.
+     * @param transport The Transport used for all requests made by this Conversation.
+     */
+    public Conversation(ResponseListener listener, Transport transport) {
         mListener = listener;
-        mApiClient = new ApiClient(VersionInfo.API_BASE_URL, new ResponseListener() {
+        mTransport = transport;
+        mPipeline = new RequestPipeline(new ResponseListener() {
             @Override
             public void onResponse(Response response) {
-                // Conversation ID and Participant ID can change at any time, so keep the current
+                // Conversation ID and Participant ID can change at any time, so keep the current.
+                // Errors don't carry them, and shouldn't wipe out the ones we already have.
                 if (response != null && mRequest != null) {
-                    mRequest.setConversationId(response.getConversationId());
-                    mRequest.setParticipantId(response.getParticipantId());
+                    if (isTrackingEntities()) {
+                        rememberEntities(response);
+                    }
+
+                    String conversationId = response.getConversationId();
+                    if (conversationId != null && !conversationId.isEmpty()) {
+                        mRequest.setConversationId(conversationId);
+                    }
+
+                    String participantId = response.getParticipantId();
+                    if (participantId != null && !participantId.isEmpty()) {
+                        mRequest.setParticipantId(participantId);
+                    }
                 }
 
                 if (mListener != null) {
@@ -75,7 +98,9 @@ public class Conversation {
             }
         });
 
-        mStreamingClient = new StreamingClient(VersionInfo.API_BASE_URL, listener);
+        if (transport.isPrewarmOnCreate()) {
+            transport.prewarm();
+        }
     }
 
     /**
@@ -90,67 +115,78 @@ public class Conversation {
      * </code></pre>
      * @param project The PullString project ID.
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void start(String project, Request request) {
+    public RequestHandle start(String project, Request request) {
         if (project == null || project.isEmpty()) {
             exitWithFailure("Project name not set");
-            return;
+            return RequestHandle.completed();
         }
 
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
+        // responses from now on share the names already seen for this project
+        mSymbols = SymbolTable.forProject(project);
+
         HashMap<String, Object> body = new HashMap<>();
         body.put("project", project);
         body.put("time_zone_offset", request.getTimezoneOffset());
 
-        postJson(body);
+        return postJson(body);
     }
 
     /**
      * Send user input text to the Web API and receive a response via the ResponseListener passed
      * into the constructor.
      * @param text User input text.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendText(String text) { sendText(text, null); }
+    public RequestHandle sendText(String text) { return sendText(text, null); }
 
     /**
      * Send user input text to the Web API and receive a response via the ResponseListener passed
      * into the constructor.
      * @param text User input text.
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendText(String text, Request request) {
+    public RequestHandle sendText(String text, Request request) {
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
         HashMap<String, Object> body = new HashMap<>();
         body.put("text", text);
 
-        postJson(body);
+        return postJson(body);
     }
 
     /**
      * Send an intent as user input to the Web API and receive a response via the ResponseListener.
      * @param intent The name of the intent representing user input.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendIntent(String intent) { sendIntent(intent, null, null); }
+    public RequestHandle sendIntent(String intent) { return sendIntent(intent, null, null); }
 
     /**
      * Send an intent as user input to the Web API and receive a response via the ResponseListener.
      * @param intent The name of the intent representing user input.
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendIntent(String intent, Request request) { sendIntent(intent, null, request);}
+    public RequestHandle sendIntent(String intent, Request request) { return sendIntent(intent, null, request);}
 
     /**
      * Send an intent as user input to the Web API and receive a response via the ResponseListener.
      * @param intent The name of the intent representing user input.
      * @param entities An ArrayList specifying the entities to set (with their new values).
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendIntent(String intent, ArrayList<Entity> entities) { sendIntent(intent, entities, null); }
+    public RequestHandle sendIntent(String intent, ArrayList<Entity> entities) {
+        return sendIntent(intent, entities, null);
+    }
 
     /**
      * Send an intent as user input to the Web API and receive a response via the ResponseListener
@@ -158,55 +194,47 @@ public class Conversation {
      * @param intent The name of the intent representing user input.
      * @param entities An ArrayList specifying the entities to set (with their new values).
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendIntent(String intent, ArrayList<Entity> entities, Request request) {
+    public RequestHandle sendIntent(String intent, ArrayList<Entity> entities, Request request) {
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
         HashMap<String, Object> body = new HashMap<>();
         body.put("intent", intent);
 
         if (entities != null && !entities.isEmpty()) {
-            JSONObject entDict = new JSONObject();
-
-            try {
-                for (Entity e : entities) {
-                    entDict.putOpt(e.getName(), e.getValue());
-                }
-            } catch (JSONException e) {
-                exitWithFailure(e.getLocalizedMessage());
-                return;
-            }
-
-            body.put("set_entities", entDict);
+            body.put(SET_ENTITIES, getEntityValues(entities));
         }
 
-        postJson(body);
+        return postJson(body);
     }
 
     /**
      * Send an activity name or ID to the Web API and receive a response via the ResponseListener
      * passed into the constructor.
      * @param activity The activity name or ID.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendActivity(String activity) { sendActivity(activity, null); }
+    public RequestHandle sendActivity(String activity) { return sendActivity(activity, null); }
 
     /**
      * Send an activity name or ID to the Web API and receive a response via the ResponseListener
      * passed into the constructor.
      * @param activity The activity name or ID.
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendActivity(String activity, Request request) {
+    public RequestHandle sendActivity(String activity, Request request) {
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
         HashMap<String, Object> body = new HashMap<>();
         body.put("activity", activity);
 
-        postJson(body);
+        return postJson(body);
     }
 
     /**
@@ -214,9 +242,10 @@ public class Conversation {
      * the constructor.
      * @param eventName The event name.
      * @param parameters Any accompanying parameters.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendEvent(String eventName, HashMap<String, Object> parameters) {
-        sendEvent(eventName, parameters, null);
+    public RequestHandle sendEvent(String eventName, HashMap<String, Object> parameters) {
+        return sendEvent(eventName, parameters, null);
     }
 
     /**
@@ -225,54 +254,47 @@ public class Conversation {
      * @param eventName The event name.
      * @param parameters Any accompanying parameters.
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendEvent(String eventName, HashMap<String, Object> parameters, Request request) {
+    public RequestHandle sendEvent(String eventName, HashMap<String, Object> parameters, Request request) {
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
-        HashMap<String, Object> body = new HashMap<>();
-
-        try {
-            JSONObject paramJson = null;
-            if (parameters != null) {
-                paramJson = new JSONObject();
-                for (Map.Entry<String, Object> kv : parameters.entrySet()) {
-                    paramJson.put(kv.getKey(), kv.getValue());
-                }
-            }
-
-            JSONObject event = new JSONObject();
-            event.put("name", eventName);
-            event.put("parameters", paramJson);
-            body.put("event", event);
-        } catch (JSONException e) {
-            exitWithFailure(e.getLocalizedMessage());
+        LinkedHashMap<String, Object> event = new LinkedHashMap<>();
+        event.put("name", eventName);
+        if (parameters != null) {
+            event.put("parameters", new LinkedHashMap<>(parameters));
         }
 
-        postJson(body);
+        HashMap<String, Object> body = new HashMap<>();
+        body.put("event", event);
+
+        return postJson(body);
     }
 
     /**
      * Jump the conversation directly to a response
      * @param responseId The UUID of the response to jump to.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void goTo(String responseId) { goTo(responseId, null); }
+    public RequestHandle goTo(String responseId) { return goTo(responseId, null); }
 
     /**
      * Jump the conversation directly to a response
      * @param responseId The UUI of the response to jump to.
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void goTo(String responseId, Request request) {
+    public RequestHandle goTo(String responseId, Request request) {
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
         HashMap<String, Object> body = new HashMap<>();
         body.put("goto", responseId);
 
-        postJson(body);
+        return postJson(body);
     }
 
     /**
@@ -281,8 +303,9 @@ public class Conversation {
      * case, set a timer for that value (in seconds) and then call this method. If there is no time-
      * based response, the ResponseListener object passed into the constructor will receive an empty
      * Response object.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void checkForTimedResponse() { checkForTimedResponse(null); }
+    public RequestHandle checkForTimedResponse() { return checkForTimedResponse(null); }
 
     /**
      * Call the Web API to see if there is a time-based response to process. You only need to call
@@ -291,71 +314,80 @@ public class Conversation {
      * based response, the ResponseListener object passed into the constructor will receive an empty
      * Response object.
      * @param request A Request object with a valid API key.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void checkForTimedResponse(Request request) {
+    public RequestHandle checkForTimedResponse(Request request) {
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
-        postJson(null);
+        return postJson(null);
     }
 
     /**
      * Request the values of the specified entities (i.e.: labels, flags, and lists) from the Web
      * API.
      * @param names An array of entity names
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void getEntities(ArrayList<String> names) { getEntities(names, null); }
+    public RequestHandle getEntities(ArrayList<String> names) { return getEntities(names, null); }
 
     /**
      * Request the values of the specified entities (i.e.: labels, flags, and lists) from the Web
      * API.
      * @param names An array of entity names
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void getEntities(ArrayList<String> names, Request request) {
+    public RequestHandle getEntities(ArrayList<String> names, Request request) {
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
-        JSONArray arr = new JSONArray(names);
-        HashMap<String, Object> body = new HashMap<>();
-        body.put("get_entities", arr);
+        final ArrayList<String> requested = names != null ? new ArrayList<>(names) : new ArrayList<String>();
+        final HashMap<String, Object> body = new HashMap<>();
+        body.put("get_entities", requested);
+
+        if (!mRequest.isCacheEntities()) {
+            // reading entities changes nothing, so the transport may retry it
+            return postJson(body, true);
+        }
 
-        postJson(body);
+        // look in the cache once earlier requests are done, since they may change entities
+        return mPipeline.enqueue(new RequestPipeline.Step() {
+            @Override
+            RequestHandle send(ResponseListener done) {
+                ArrayList<Entity> cached = !requested.isEmpty() ? mEntityMirror.get(requested) : null;
+                if (cached != null) {
+                    return respondLocally(getLocalResponse(cached), done);
+                }
+                return sendJson(body, true, done);
+            }
+        });
     }
 
     /**
      * Change the values of the specified entities (i.e.: labels, flags, and lists) from the Web API.
      * @param entities An array specifying the entities to set (with their new values).
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void setEntities(ArrayList<Entity> entities) { setEntities(entities, null); }
+    public RequestHandle setEntities(ArrayList<Entity> entities) { return setEntities(entities, null); }
 
     /**
      * Change the values of the specified entities (i.e.: labels, flags, and lists) from the Web API.
      * @param entities An array specifying the entities to set (with their new values).
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void setEntities(ArrayList<Entity> entities, Request request) {
+    public RequestHandle setEntities(ArrayList<Entity> entities, Request request) {
         if (!ensureRequestExists(request)) {
-            return;
-        }
-
-        JSONObject entDict = new JSONObject();
-
-        try {
-            for (Entity e : entities) {
-                entDict.putOpt(e.getName(), e.getValue());
-            }
-        } catch (JSONException e) {
-            exitWithFailure(e.getLocalizedMessage());
-            return;
+            return RequestHandle.completed();
         }
 
         HashMap<String, Object> body = new HashMap<>();
-        body.put("set_entities", entDict);
+        body.put(SET_ENTITIES, getEntityValues(entities));
 
-        postJson(body);
+        return postJson(body);
     }
 
     /**
@@ -383,31 +415,46 @@ public class Conversation {
 
     /**
      * Initiate a progressive (chunked) streaming of audio data.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void startAudio() {
-        startAudio(null);
+    public RequestHandle startAudio() {
+        return startAudio(null);
     }
 
     /**
-     * Initiate a progressive (chunked) streaming of audio data, where supported.
+     * Initiate a progressive (chunked) streaming of audio data, where supported. Only one stream
+     * records at a time, so starting another ends this one. A stream that is never ended is
+     * ended once it has been open for Request.getMaxAudioDuration().
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void startAudio(Request request) {
+    public RequestHandle startAudio(Request request) {
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
-        if (mSpeech == null) {
-            mSpeech = new Speech();
+        // a stream left open would otherwise hold up this one, and everything after it, forever
+        AudioStream previous = mAudio;
+        if (previous != null) {
+            previous.end();
         }
 
-        HashMap<String, String> headers = getHeaders(mRequest, true);
-        // open a stream asynchronously
-        mStreamingClient.open(getEndpoint(), headers, new OpenStreamListener() {
+        final AudioStream audio = new AudioStream(mRequest.getMaxAudioDuration());
+        mAudio = audio;
+
+        // open a stream asynchronously once earlier requests are done, and hold the pipeline
+        // until the stream is closed
+        return mPipeline.enqueue(new RequestPipeline.Step() {
             @Override
-            public void onOpen(OutputStream os) {
-                mAudioStream = os;
-                mSpeech.start();
+            RequestHandle send(ResponseListener done) {
+                // speech may change anything, including entities
+                mEntityMirror.clear();
+                return mTransport.openStream(newApiRequest(true, false, null), new OpenStreamListener() {
+                    @Override
+                    public void onOpen(UploadStream stream) {
+                        audio.open(stream);
+                    }
+                }, done);
             }
         });
     }
@@ -418,8 +465,9 @@ public class Conversation {
      * @param samples Raw audio samples.
      */
     public void addAudio(short[] samples) {
-        if (mSpeech != null) {
-            mSpeech.streamAudio(samples, mAudioStream);
+        AudioStream audio = mAudio;
+        if (audio != null) {
+            audio.write(samples);
         }
     }
 
@@ -429,17 +477,20 @@ public class Conversation {
      * constructor.
      */
     public void endAudio() {
-        mSpeech.stop();
-        mStreamingClient.close();
+        AudioStream audio = mAudio;
+        if (audio != null) {
+            audio.end();
+        }
     }
 
     /**
      * Send an entire audio sample of the user speaking to the Web API. Audio must be, mono 16-bit
      * linear PCM at a sample rate of 16000 samples per second.
      * @param audio Mono 16-bit linear PCM audio clip at 16k Hz sample rate.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendAudio(byte[] audio) {
-        sendAudio(audio, AsrAudioFormat.WAV_16K);
+    public RequestHandle sendAudio(byte[] audio) {
+        return sendAudio(audio, AsrAudioFormat.WAV_16K);
     }
 
     /**
@@ -448,9 +499,10 @@ public class Conversation {
      * @param audio Mono 16-bit linear PCM audio clip at 16k Hz sample rate.
      * @param format The audio sample's format [Currently, only AsrAudioFormat.WAV_16K is
      * supported].
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendAudio(byte[] audio, AsrAudioFormat format) {
-        sendAudio(audio, format, null);
+    public RequestHandle sendAudio(byte[] audio, AsrAudioFormat format) {
+        return sendAudio(audio, format, null);
     }
 
     /**
@@ -460,124 +512,242 @@ public class Conversation {
      * @param format The audio sample's format [Currently, only AsrAudioFormat.WAV_16K is
      * supported].
      * @param request A Request object with a valid API key set.
+     * @return A RequestHandle that can be used to cancel the request.
      */
-    public void sendAudio(byte[] audio, AsrAudioFormat format, Request request) {
+    public RequestHandle sendAudio(byte[] audio, AsrAudioFormat format, Request request) {
         if (format == AsrAudioFormat.RAW_PCM_16K) {
             exitWithFailure("Unsupported format sent to sendAudio.");
-            return;
+            return RequestHandle.completed();
         }
 
         if (!ensureRequestExists(request)) {
-            return;
+            return RequestHandle.completed();
         }
 
-        HashMap<String, String> headers = getHeaders(mRequest, true);
-        HashMap<String, String> query = getQuery(mRequest);
-
         StringBuilder sb = new StringBuilder();
-        byte[] data = Speech.getWavData(audio, sb);
+        final byte[] data = Speech.getWavData(audio, sb);
         String err = sb.toString();
 
         if (data != null && err.isEmpty()) {
-            mApiClient.post(getEndpoint(), query, headers, data);
-        } else {
-            exitWithFailure(err);
+            return mPipeline.enqueue(new RequestPipeline.Step() {
+                @Override
+                RequestHandle send(ResponseListener done) {
+                    mEntityMirror.clear();
+                    return mTransport.post(newApiRequest(true, true, data), done);
+                }
+            });
         }
+
+        exitWithFailure(err);
+        return RequestHandle.completed();
     }
 
     /**
-     * /conversation for a new conversation. /conversation/<conversation id> for a continuing one.
+     * Queue an asynchronous request to the Web API. The request itself is built just before it
+     * is sent, so that it picks up IDs from any response still in flight.
      */
-    private String getEndpoint() {
-        StringBuilder sb = new StringBuilder(Keys.ConversationEndpoint);
+    private RequestHandle postJson(HashMap<String, Object> payload) {
+        return postJson(payload, false);
+    }
 
-        String conversationId = getConversationId();
-        if (conversationId != null) {
-            sb.append('/');
-            sb.append(conversationId);
+    /**
+     * Queue an asynchronous request to the Web API, marking whether it is safe to send twice.
+     */
+    private RequestHandle postJson(final HashMap<String, Object> payload, final boolean idempotent) {
+        return mPipeline.enqueue(new RequestPipeline.Step() {
+            @Override
+            RequestHandle send(ResponseListener done) {
+                return sendJson(payload, idempotent, done);
+            }
+        });
+    }
+
+    /**
+     * Send a request to the Web API now. Only called by a pipeline step.
+     */
+    @SuppressWarnings("unchecked")
+    private RequestHandle sendJson(HashMap<String, Object> payload, boolean idempotent, ResponseListener done) {
+        HashMap<String, Object> body = payload;
+        if (isTrackingEntities() && !idempotent) {
+            if (mRequest.isSkipUnchangedEntities() && isUnchanged(payload)) {
+                // nothing would change, so answer without a round trip
+                return respondLocally(getLocalResponse(
+                        EntityMirror.toEntities((Map<String, Object>) payload.get(SET_ENTITIES))), done);
+            }
+            body = trackEntities(payload, mRequest.isSkipUnchangedEntities());
+        }
+
+        byte[] data;
+        try {
+            data = writeBody(mRequest, body);
+        } catch (IllegalArgumentException e) {
+            // e.g. a counter set to NaN
+            return respondLocally(HttpClient.getErrorResponse(
+                    Status.InternalError.BAD_REQUEST.getValue(), e.getLocalizedMessage()), done);
         }
 
-        return sb.toString();
+        ApiRequest apiRequest = newApiRequest(false, true, data);
+        apiRequest.setIdempotent(idempotent);
+        return mTransport.post(apiRequest, done);
     }
 
     /**
-     * Send an asynchronous request to the Web API
+     * Whether the current Request has the entity mirror kept up to date
      */
-    private void postJson(HashMap<String, Object> payload) {
-        HashMap<String, String> headers = getHeaders(mRequest, false);
-        HashMap<String, String> query = getQuery(mRequest);
-        JSONObject json = getBody(mRequest, payload);
+    private boolean isTrackingEntities() {
+        return mRequest.isSkipUnchangedEntities() || mRequest.isCacheEntities();
+    }
 
-        mApiClient.post(getEndpoint(), query, headers, json);
+    /**
+     * Check whether a request only sets entities, all to values the Web API already holds.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isUnchanged(HashMap<String, Object> payload) {
+        if (payload == null || payload.size() != 1 || !payload.containsKey(SET_ENTITIES)) {
+            return false;
+        }
+        return mEntityMirror.changed((Map<String, Object>) payload.get(SET_ENTITIES)).isEmpty();
     }
 
     /**
-     * Add Authorization, Accept, and Content-Type headers
+     * Keep the entity mirror in step with a request that is about to be sent, and optionally
+     * drop any entity values the Web API already holds.
+     * @param payload The request's payload, which may be null.
+     * @param skipUnchanged Whether to leave out unchanged entity values.
+     * @return The payload to send.
      */
-    private HashMap<String, String> getHeaders(Request request, boolean isAudio) {
-        if (request == null) return null;
-        HashMap<String,String> headers = new HashMap<>();
+    @SuppressWarnings("unchecked")
+    private HashMap<String, Object> trackEntities(HashMap<String, Object> payload, boolean skipUnchanged) {
+        Map<String, Object> values = payload != null ? (Map<String, Object>) payload.get(SET_ENTITIES) : null;
+        if (values == null) {
+            // input may change anything, including entities
+            mEntityMirror.clear();
+            return payload;
+        }
+
+        boolean entitiesOnly = payload.size() == 1;
+        if (!skipUnchanged) {
+            if (entitiesOnly) {
+                mEntityMirror.put(values);
+            } else {
+                mEntityMirror.clear();
+            }
+            return payload;
+        }
 
-        headers.put("Authorization", "Bearer " + request.getApiKey());
-        headers.put("Accept", "application/json");
-        headers.put("Content-Type", isAudio ? "audio/l16; rate=16000" : "application/json");
+        LinkedHashMap<String, Object> changed = mEntityMirror.changed(values);
+        HashMap<String, Object> body = new HashMap<>(payload);
+        if (changed.isEmpty()) {
+            body.remove(SET_ENTITIES);
+        } else {
+            body.put(SET_ENTITIES, changed);
+        }
 
-        return headers;
+        if (entitiesOnly) {
+            mEntityMirror.put(changed);
+        } else {
+            mEntityMirror.clear();
+        }
+        return body;
     }
 
     /**
-     * Add asr_language and account (if present) to query string.
+     * Answer a pipeline step without contacting the Web API. The Response is posted to the main
+     * thread like any other, so the app's listener never runs inside the call that made the
+     * request.
      */
-    private HashMap<String, String> getQuery(Request request) {
-        HashMap<String, String> parameters = new HashMap<>();
-        parameters.put("asr_language", request.getLanguage());
+    private static RequestHandle respondLocally(Response response, ResponseListener done) {
+        new ReceivedResponse(response).deliver(done);
+        return RequestHandle.completed();
+    }
 
-        String account = request.getAccountId();
-        if (account != null && !account.isEmpty()) {
-            parameters.put("account", account);
-        }
+    /**
+     * Answer a request from the entity mirror the way the Web API would have, e.g. a
+     * setEntities() call that would change nothing, or a getEntities() call for known values.
+     */
+    private Response getLocalResponse(ArrayList<Entity> entities) {
+        String eTag = mEntityMirror.getETag();
+        Response response = new Response();
+        response.setStatus(new Status());
+        response.setConversationId(mRequest.getConversationId());
+        response.setParticipantId(mRequest.getParticipantId());
+        response.setETag(eTag != null ? eTag : "");
+        response.setAsrHypothesis("");
+        response.setEndpoint("");
+        response.setOutputs(new ArrayList<Output>());
+        response.setEntities(entities);
+        return response;
+    }
 
-        // only add restart_if_modified or if_modified if not default value
-        if (!request.isRestartIfModified()) {
-            parameters.put("restart_if_modified", "false");
-        } else if (request.getIfModifiedAction() != IfModifiedAction.NOTHING) {
-            parameters.put("if_modified", request.getIfModifiedAction().toString());
+    /**
+     * Update the entity mirror from a response. A failed request may or may not have changed
+     * entities, so afterwards nothing is known for sure.
+     */
+    private void rememberEntities(Response response) {
+        Status status = response.getStatus();
+        if (status != null && status.isSuccess()) {
+            mEntityMirror.update(response.getEntities(), response.getETag());
+        } else {
+            mEntityMirror.clear();
         }
+    }
 
-        return parameters;
+    /**
+     * Describe a request to the Transport from the current Request's envelope, carrying over its
+     * deadline and response options
+     * @param isAudio true for an audio body or stream, false for JSON.
+     * @param withQuery Whether to send query parameters.
+     */
+    private ApiRequest newApiRequest(boolean isAudio, boolean withQuery, byte[] body) {
+        ApiRequest request = new ApiRequest(mRequest.getEnvelope(), isAudio, withQuery, body);
+        request.setTimeout(mRequest.getTimeout());
+        ResponseParser parser = new ResponseParser(mRequest.isLazyResponses(), mRequest.getResponseFields(), mSymbols);
+        parser.setPooled(mRequest.isRecycleResponses());
+        request.setParser(parser);
+        return request;
     }
 
     /**
-     * Add build_type, participant, restart_if_modified, and any custom parameters to body if
-     * present and not the default values.
+     * Encode build_type, participant, restart_if_modified, and any custom parameters as the body
+     * if present and not the default values.
+     * @throws IllegalArgumentException If a number in the parameters is NaN or infinite.
      */
-    private JSONObject getBody(Request request, HashMap<String, Object> parameters) {
+    private byte[] writeBody(Request request, HashMap<String, Object> parameters) {
+        // only called from a Step's send(), and the pipeline sends one step at a time, so the
+        // shared writer is never in use by two requests at once
+        JsonBodyWriter writer = mBodyWriter.reset().beginObject();
 
-        JSONObject body = new JSONObject();
+        BuildType buildType = request.getBuildType();
+        // production build type is default, so only add non-default value
+        if (buildType != BuildType.PRODUCTION) {
+            writer.name("build_type").value(buildType.toString());
+        }
 
-        try {
-            BuildType buildType = request.getBuildType();
-            // production build type is default, so only add non-default value
-            if (buildType != BuildType.PRODUCTION) {
-                body.put("build_type", buildType.toString());
-            }
+        String participant = request.getParticipantId();
+        if (participant != null && !participant.isEmpty()) {
+            writer.name("participant").value(participant);
+        }
 
-            String participant = request.getParticipantId();
-            if (participant != null && !participant.isEmpty()) {
-                body.put("participant", participant);
+        if (parameters != null) {
+            for (Map.Entry<String, Object> kv : parameters.entrySet()) {
+                writer.name(kv.getKey()).value(kv.getValue());
             }
+        }
 
-            if (parameters != null) {
-                for (String key : parameters.keySet()) {
-                    body.put(key, parameters.get(key));
-                }
+        return writer.endObject().toByteArray();
+    }
+
+    /**
+     * Collect entity names and values for set_entities, skipping any without either.
+     */
+    private static LinkedHashMap<String, Object> getEntityValues(ArrayList<Entity> entities) {
+        LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+        for (Entity e : entities) {
+            if (e.getName() != null && e.getValue() != null) {
+                values.put(e.getName(), e.getValue());
             }
-        } catch (JSONException e) {
-            Log.e(Keys.TAG, e.toString());
-            body = null;
         }
-
-        return body;
+        return values;
     }
 
     /**
@@ -613,10 +783,90 @@ public class Conversation {
         }
     }
 
+    /**
+     * One stream of audio, from startAudio() until it is closed. Samples may arrive on any
+     * thread while the stream opens on the main thread, so its state is guarded by its own lock.
+     * A stream still queued behind other requests keeps its state apart from any started later.
+     */
+    private static class AudioStream {
+        /**
+         * @param maxDuration The longest the stream may stay open, in milliseconds, or 0 for no
+         *                    limit.
+         */
+        AudioStream(long maxDuration) {
+            mMaxDuration = maxDuration;
+        }
+
+        /**
+         * Start recording into a freshly opened stream, or close it right away if the audio was
+         * already ended while it connected.
+         */
+        void open(UploadStream stream) {
+            synchronized (this) {
+                if (!mEnded) {
+                    mStream = stream;
+                    mSpeech.start();
+                    if (mMaxDuration > 0) {
+                        mLimit = SdkExecutors.watchdog().schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                end();
+                            }
+                        }, mMaxDuration, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+            }
+
+            stream.close();
+        }
+
+        synchronized void write(short[] samples) {
+            if (mStream != null) {
+                mSpeech.streamAudio(samples, mStream.getOutputStream());
+            }
+        }
+
+        /**
+         * Stop recording and close the stream, or have it closed as soon as it opens. Only the
+         * first call has any effect.
+         */
+        void end() {
+            UploadStream stream;
+            synchronized (this) {
+                if (mEnded) {
+                    return;
+                }
+                mEnded = true;
+                mSpeech.stop();
+                if (mLimit != null) {
+                    mLimit.cancel(false);
+                }
+
+                stream = mStream;
+                mStream = null;
+            }
+
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        private final long mMaxDuration;
+        private final Speech mSpeech = new Speech();
+        private UploadStream mStream;
+        private ScheduledFuture<?> mLimit;
+        private boolean mEnded;
+    }
+
     private Request mRequest;
-    private ApiClient mApiClient;
-    private StreamingClient mStreamingClient;
-    private OutputStream mAudioStream;
+    private final Transport mTransport;
+    private final RequestPipeline mPipeline;
+    private volatile AudioStream mAudio;
     private ResponseListener mListener;
-    private Speech mSpeech;
+    private SymbolTable mSymbols = new SymbolTable();
+    private final JsonBodyWriter mBodyWriter = new JsonBodyWriter();
+    private final EntityMirror mEntityMirror = new EntityMirror();
+
+    private static final String SET_ENTITIES = "set_entities";
 }
@@ -14,6 +14,10 @@ import java.util.ArrayList;
  * Subclass of Output representing a dialog response.
  */
 public class DialogOutput extends Output {
+    DialogOutput() {
+        // filled in by ResponseParser
+    }
+
     public DialogOutput(JSONObject json) {
         mGuid = json.optString(Keys.Guid);
         mText = json.optString(Keys.Text);
@@ -50,6 +54,7 @@ public class DialogOutput extends Output {
      * @return The response String.
      */
     public String getText() {
+        checkNotRecycled();
         return mText;
     }
 
@@ -66,6 +71,7 @@ public class DialogOutput extends Output {
      * @return The audio path String.
      */
     public String getAudioUri() {
+        checkNotRecycled();
         return mAudioUri;
     }
 
@@ -82,6 +88,7 @@ public class DialogOutput extends Output {
      * @return The video path String.
      */
     public String getVideoUri() {
+        checkNotRecycled();
         return mVideoUri;
     }
 
@@ -98,6 +105,7 @@ public class DialogOutput extends Output {
      * @return The character's name.
      */
     public String getCharacter() {
+        checkNotRecycled();
         return mCharacter;
     }
 
@@ -114,6 +122,7 @@ public class DialogOutput extends Output {
      * @return The duration, in seconds.
      */
     public double getDuration() {
+        checkNotRecycled();
         return mDuration;
     }
 
@@ -131,6 +140,7 @@ public class DialogOutput extends Output {
      * @return The user data String.
      */
     public String getUserData() {
+        checkNotRecycled();
         return mUserData;
     }
 
@@ -146,7 +156,12 @@ public class DialogOutput extends Output {
      * Get spoken mouth shapes for the line.
      * @return An ArrayList of Phonemes.
      */
-    public ArrayList<Phoneme> getPhonemes() {
+    public synchronized ArrayList<Phoneme> getPhonemes() {
+        checkNotRecycled();
+        if (mDeferredPhonemes != null) {
+            mPhonemes = mDeferredPhonemes.readPhonemes(mOutputIndex);
+            mDeferredPhonemes = null;
+        }
         return mPhonemes;
     }
 
@@ -154,8 +169,77 @@ public class DialogOutput extends Output {
      * Set spoken mouth shapes for the line.
      * @param phonemes An ArrayList of Phonemes.
      */
-    public void setPhonemes(ArrayList<Phoneme> phonemes) {
+    public synchronized void setPhonemes(ArrayList<Phoneme> phonemes) {
         mPhonemes = phonemes;
+        dropDeferredPhonemes();
+        mTimeline = null;
+    }
+
+    /**
+     * Get spoken mouth shapes for the line as a compact timeline, for looking up the phoneme at
+     * a given playback time. Built on first use and reused after that. The timeline does not
+     * reflect later changes to the list returned by getPhonemes().
+     * @return A PhonemeTimeline, which is empty if the line has no phonemes.
+     */
+    public synchronized PhonemeTimeline getPhonemeTimeline() {
+        checkNotRecycled();
+        if (mTimeline == null) {
+            mTimeline = new PhonemeTimeline(getPhonemes());
+        }
+        return mTimeline;
+    }
+
+    /**
+     * Decode phonemes from the response body the first time they are asked for.
+     * @param index The position of this dialog in the response's outputs.
+     */
+    synchronized void deferPhonemes(ResponseParser.Deferred deferred, int index) {
+        dropDeferredPhonemes();
+        deferred.addPart();
+        mDeferredPhonemes = deferred;
+        mOutputIndex = index;
+        mPhonemes = null;
+        mTimeline = null;
+    }
+
+    /**
+     * Reset a pooled DialogOutput before the parser fills it in again.
+     */
+    synchronized void revive() {
+        mRecycled = false;
+        mRecycledAt = null;
+        mPhonemes = null;
+        dropDeferredPhonemes();
+        mTimeline = null;
+    }
+
+    /**
+     * Stop waiting to decode phonemes, so the response body can be let go without them.
+     */
+    private void dropDeferredPhonemes() {
+        if (mDeferredPhonemes != null) {
+            mDeferredPhonemes.dropPart();
+            mDeferredPhonemes = null;
+        }
+    }
+
+    /**
+     * @return The phonemes, which the caller takes over, or null if there are none.
+     * @throws IllegalStateException If the DialogOutput was already recycled.
+     */
+    synchronized ArrayList<Phoneme> markRecycled(Throwable recycledAt) {
+        checkNotRecycled();
+        mRecycled = true;
+        mRecycledAt = recycledAt;
+
+        ArrayList<Phoneme> phonemes = mPhonemes;
+        mPhonemes = null;
+        mTimeline = null;
+        return phonemes;
+    }
+
+    private void checkNotRecycled() {
+        ResponsePool.checkNotRecycled(mRecycled, mRecycledAt);
     }
 
     private String mText;
@@ -165,5 +249,10 @@ public class DialogOutput extends Output {
     private double mDuration;
     private String mUserData;
     private ArrayList<Phoneme> mPhonemes;
+    private ResponseParser.Deferred mDeferredPhonemes;
+    private int mOutputIndex;
+    private PhonemeTimeline mTimeline;
+    private volatile boolean mRecycled;
+    private Throwable mRecycledAt;
     private final OutputType mType = OutputType.DIALOG;
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The entity values a Conversation knows the Web API holds, learned from the entities in its
+ * responses and from the values it has set itself. Anything that may have changed entities
+ * behind our back, such as user input, clears the mirror, so it only ever holds values that
+ * are known to be current. The ETag of the content the values were seen with is kept too, and a
+ * response from different content starts the mirror over.
+ */
+class EntityMirror {
+    /**
+     * Forget every value, e.g. when input that may change entities is sent, or a request fails.
+     */
+    synchronized void clear() {
+        mValues.clear();
+    }
+
+    /**
+     * Remember the values returned in a response.
+     * @param eTag The response's ETag. Null or empty if unknown.
+     */
+    synchronized void update(ArrayList<Entity> entities, String eTag) {
+        if (eTag != null && !eTag.isEmpty()) {
+            if (!eTag.equals(mETag)) {
+                // the content changed, and entities may have changed with it
+                mValues.clear();
+            }
+            mETag = eTag;
+        }
+
+        if (entities == null) {
+            return;
+        }
+
+        for (Entity entity : entities) {
+            if (entity.getName() != null && entity.getValue() != null) {
+                mValues.put(entity.getName(), snapshot(entity.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Remember values that are being set.
+     */
+    synchronized void put(Map<String, Object> values) {
+        for (Map.Entry<String, Object> kv : values.entrySet()) {
+            mValues.put(kv.getKey(), snapshot(kv.getValue()));
+        }
+    }
+
+    /**
+     * Look up the entities with the given names.
+     * @return The entities in the order asked for, or null unless every one of them is known.
+     */
+    synchronized ArrayList<Entity> get(Collection<String> names) {
+        ArrayList<Entity> entities = new ArrayList<>(names.size());
+        for (String name : names) {
+            Entity entity = toEntity(name, mValues.get(name));
+            if (entity == null) {
+                return null;
+            }
+            entities.add(entity);
+        }
+        return entities;
+    }
+
+    /**
+     * @return The ETag of the last response remembered, or null if none had one.
+     */
+    synchronized String getETag() {
+        return mETag;
+    }
+
+    /**
+     * Find the values that differ from what the Web API is known to hold.
+     * @return The changed values, in their original order. Empty if nothing would change.
+     */
+    synchronized LinkedHashMap<String, Object> changed(Map<String, Object> values) {
+        LinkedHashMap<String, Object> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> kv : values.entrySet()) {
+            Object known = mValues.get(kv.getKey());
+            if (known == null || !known.equals(kv.getValue())) {
+                changed.put(kv.getKey(), kv.getValue());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Build entities from values, as they would come back from the Web API.
+     */
+    static ArrayList<Entity> toEntities(Map<String, Object> values) {
+        ArrayList<Entity> entities = new ArrayList<>(values.size());
+        for (Map.Entry<String, Object> kv : values.entrySet()) {
+            Entity entity = toEntity(kv.getKey(), kv.getValue());
+            if (entity != null) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * @return The matching Entity subclass, or null if the value isn't an entity value.
+     */
+    static Entity toEntity(String name, Object value) {
+        if (value instanceof String) {
+            return new Label(name, (String) value);
+        } else if (value instanceof Number) {
+            return new Counter(name, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            return new Flag(name, (Boolean) value);
+        } else if (value instanceof ArrayList) {
+            return new List(name, new ArrayList<>((ArrayList<?>) value));
+        }
+        return null;
+    }
+
+    /**
+     * Copy lists, so that the app changing one it passed in doesn't change what we remember
+     */
+    private static Object snapshot(Object value) {
+        return value instanceof ArrayList ? new ArrayList<>((ArrayList<?>) value) : value;
+    }
+
+    private final HashMap<String, Object> mValues = new HashMap<>();
+    private String mETag;
+}
@@ -6,88 +6,245 @@
  */
 package com.pullstring.sdk;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 
 /**
  * Encapsulate some shared functionality for HTTP requests in a base class
  */
 class HttpClient {
-    HttpClient(String baseUrl, final ResponseListener listener) {
+    HttpClient(String baseUrl) {
         mBaseUrl = baseUrl;
-        mListener = listener;
     }
 
     /**
-     * Convert a dictionary of parameters into a query string
+     * Set the Executor that background work for this client runs on.
      */
-    String getUrl(String endpoint, Map<String, String> parameters) {
-        StringBuilder sb = new StringBuilder(mBaseUrl);
-        if (!mBaseUrl.endsWith("/") && !endpoint.startsWith("/")) {
-            sb.append('/');
+    void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Configure socket timeouts and the default overall deadline, all in milliseconds. 0 means
+     * no limit.
+     */
+    void setTimeouts(int connectTimeout, int readTimeout, long timeout) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+        mTimeout = timeout;
+    }
+
+    /**
+     * Get the time allowed to establish a connection, in milliseconds, or 0 for no limit.
+     */
+    int getConnectTimeout() {
+        return mConnectTimeout;
+    }
+
+    /**
+     * Set the factory TLS sockets are created with. Pass null to use the platform default.
+     */
+    void setSocketFactory(SSLSocketFactory socketFactory) {
+        mSocketFactory = socketFactory;
+    }
+
+    /**
+     * Open a connection to the given URL using this client's socket factory. Connections are
+     * only pooled with others made through the same factory.
+     */
+    HttpsURLConnection openConnection(String url) throws IOException {
+        HttpsURLConnection connection = (HttpsURLConnection) new URL(url).openConnection();
+        SSLSocketFactory socketFactory = mSocketFactory;
+        if (socketFactory != null) {
+            connection.setSSLSocketFactory(socketFactory);
         }
-        sb.append(endpoint);
+        return connection;
+    }
+
+    /**
+     * Create a Call to track a request, using the request's own deadline if it has one.
+     */
+    Call newCall(ApiRequest request) {
+        long timeout = request != null && request.getTimeout() > 0 ? request.getTimeout() : mTimeout;
+        return new Call(timeout);
+    }
+
+    /**
+     * Apply socket timeouts, never letting them run past the call's deadline. The read timeout
+     * also bounds the TLS handshake.
+     */
+    void applyTimeouts(HttpsURLConnection connection, Call call) {
+        connection.setConnectTimeout(call.remaining(mConnectTimeout));
+        connection.setReadTimeout(call.remaining(mReadTimeout));
+    }
+
+    /**
+     * Record bytes sent and received in a TransportMetrics object. Pass null to stop recording.
+     */
+    void setMetrics(TransportMetrics metrics) {
+        mMetrics = metrics;
+    }
 
-        if (parameters == null) {
-            return sb.toString();
+    /**
+     * Limit the number of connections this client holds open at once. Pass null for no limit.
+     */
+    void setConnectionPermits(ConnectionPermits permits) {
+        mConnectionPermits = permits;
+    }
+
+    /**
+     * Get the slots limiting open connections, or null if there is no limit.
+     */
+    ConnectionPermits getConnectionPermits() {
+        return mConnectionPermits;
+    }
+
+    /**
+     * Get the base URL requests are made against
+     */
+    String getBaseUrl() {
+        return mBaseUrl;
+    }
+
+    /**
+     * Give back a slot taken from permits, if connections are limited.
+     */
+    static void releasePermit(ConnectionPermits permits) {
+        if (permits != null) {
+            permits.release();
         }
+    }
 
-        sb.append('?');
+    /**
+     * Build the full URL for a request against this client's base URL
+     */
+    String getUrl(ApiRequest request) {
+        return request.getUrl(mBaseUrl);
+    }
 
-        Set<String> keySet = parameters.keySet();
-        int keyCount = keySet.size();
+    /**
+     * Build a URL from a base URL, an endpoint and a dictionary of query parameters
+     */
+    static String getUrl(String baseUrl, String endpoint, Map<String, String> parameters) {
+        return getUrl(baseUrl, endpoint, parameters != null ? getQueryString(parameters) : null);
+    }
 
-        for (Map.Entry<String, String> kv : parameters.entrySet()) {
-            --keyCount;
-            sb.append(kv.getKey());
-            sb.append('=');
-            sb.append(kv.getValue());
+    /**
+     * Build a URL from a base URL, an endpoint and a query string that has already been built.
+     * @param query The query string without the leading '?', or null for none.
+     */
+    static String getUrl(String baseUrl, String endpoint, String query) {
+        StringBuilder sb = new StringBuilder(baseUrl.length() + endpoint.length()
+                + (query != null ? query.length() + 2 : 1));
+        sb.append(baseUrl);
+        if (!baseUrl.endsWith("/") && !endpoint.startsWith("/")) {
+            sb.append('/');
+        }
+        sb.append(endpoint);
 
-            if (keyCount > 0) {
-                sb.append('&');
-            }
+        if (query != null) {
+            sb.append('?');
+            sb.append(query);
         }
         return sb.toString();
     }
 
     /**
-     * Read the InputStream from the connection and parse it into a Response object.
+     * Convert a dictionary of parameters into a percent-encoded query string
      */
-    static Response parse(HttpsURLConnection connection) {
-        Response response;
-        try {
-            InputStream stream = new BufferedInputStream(connection.getInputStream());
-            String jsonStr = read(stream);
-            String endpoint = connection.getHeaderField(Keys.LocationHeader);
+    static String getQueryString(Map<String, String> parameters) {
+        return QueryBuilder.build(parameters);
+    }
 
-            JSONObject json = new JSONObject(jsonStr);
-            json.putOpt(Keys.EndpointHeader, endpoint);
+    /**
+     * Advertise the compressed encodings we can decode. Setting this header ourselves also stops
+     * the platform from silently decompressing, so the on-the-wire size can be measured.
+     */
+    static void acceptCompressed(HttpsURLConnection connection) {
+        connection.setRequestProperty(ACCEPT_ENCODING, SUPPORTED_ENCODINGS);
+    }
 
-            response = new Response(json);
+    /**
+     * Read the whole response from the connection, leaving successful bodies to be parsed later
+     * off the I/O thread (see ReceivedResponse). Errors are parsed right away, since they are
+     * small.
+     */
+    ReceivedResponse receive(HttpsURLConnection connection, ResponseParser parser) {
+        InputStream raw;
+        try {
+            raw = connection.getInputStream();
         } catch (IOException e) {
             try {
-                InputStream errStream = new BufferedInputStream(connection.getErrorStream());
-                String errString = read(errStream);
-                JSONObject errJson = new JSONObject(errString).getJSONObject(Keys.Error);
-                response = getErrorResponse(errJson.getInt(Keys.Status), errJson.getString(Keys.Message));
+                return new ReceivedResponse(parseError(readBody(connection, connection.getErrorStream())));
             } catch (Exception e2) {
-                response = getErrorResponse(Status.InternalError.PARSING.getValue(), e2.getLocalizedMessage());
+                return new ReceivedResponse(getErrorResponse(Status.InternalError.PARSING.getValue(),
+                        e2.getLocalizedMessage()));
             }
-        } catch (JSONException e) {
-            response = getErrorResponse(Status.InternalError.PARSING.getValue(), e.getLocalizedMessage());
         }
 
-        return response;
+        String endpoint = connection.getHeaderField(Keys.LocationHeader);
+        // the platform already buffers the socket, so there's no need to copy through another buffer
+        CountingInputStream wire = new CountingInputStream(raw);
+        CountingInputStream body = null;
+        try {
+            body = new CountingInputStream(decode(connection, wire));
+            return new ReceivedResponse(readBytes(body, identityLength(connection)), endpoint, parser);
+        } catch (IOException e) {
+            // a broken connection or a corrupt compressed body
+            return new ReceivedResponse(getErrorResponse(Status.InternalError.PARSING.getValue(),
+                    e.getLocalizedMessage()));
+        } finally {
+            // make sure the body is consumed so the socket can be reused
+            if (body != null) {
+                drain(body);
+            } else {
+                drain(wire);
+            }
+
+            TransportMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.addResponse(body != null ? body.getCount() : 0, wire.getCount());
+            }
+        }
+    }
+
+    /**
+     * Build a failed Response from the body of an HTTP error, which carries the Web API's status
+     * code and message.
+     */
+    static Response parseError(String body) {
+        try {
+            JSONObject errJson = new JSONObject(body).getJSONObject(Keys.Error);
+            return getErrorResponse(errJson.getInt(Keys.Status), errJson.getString(Keys.Message));
+        } catch (Exception e) {
+            return getErrorResponse(Status.InternalError.PARSING.getValue(), e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Parse a JSON response body into a Response object.
+     * @param jsonStr The raw response body.
+     * @param endpoint The value of the Location header, if any.
+     */
+    static Response parse(String jsonStr, String endpoint) {
+        try {
+            return new ResponseParser().parse(jsonStr.getBytes(ENCODING), endpoint);
+        } catch (IOException | RuntimeException e) {
+            return getErrorResponse(Status.InternalError.PARSING.getValue(), e.getLocalizedMessage());
+        }
     }
 
     /**
@@ -105,71 +262,180 @@ class HttpClient {
     }
 
     /**
-     * Convert and InputStream into a String
+     * Read a response body, decoding it according to its Content-Encoding.
      */
-    static private String read(InputStream stream) throws IOException {
-        Reader reader = new InputStreamReader(stream, ENCODING);
-        char[] buffer = new char[1024];
-        int bytesRead;
-        StringBuilder builder = new StringBuilder();
+    private String readBody(HttpsURLConnection connection, InputStream raw) throws IOException {
+        CountingInputStream wire = new CountingInputStream(raw);
+        CountingInputStream body = new CountingInputStream(decode(connection, wire));
+
+        String result = readFully(body, identityLength(connection));
 
-        while((bytesRead = reader.read(buffer)) != -1) {
-            builder.append(new String(buffer, 0, bytesRead));
+        TransportMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.addResponse(body.getCount(), wire.getCount());
         }
 
-        return builder.toString();
+        return result;
+    }
+
+    /**
+     * Get the size of the decoded body, if known. Content-Length describes the wire, so it is
+     * only the body's size when the body is uncompressed.
+     * @return The number of bytes, or -1 if unknown.
+     */
+    private static int identityLength(HttpsURLConnection connection) {
+        return connection.getContentEncoding() == null ? connection.getContentLength() : -1;
     }
 
     /**
-     * Encapsulate a Web API request that can be used whether sending JSON, and audio file, or an
-     * audio stream
+     * Wrap a response body in a decoder matching its Content-Encoding.
      */
-    class ApiRequest {
-        /**
-         * Request with bytes
-         */
-        ApiRequest(String endpoint, Map<String, String> parameters, Map<String,String> headers, byte[] body) {
-            this.endpoint = endpoint;
-            this.parameters = parameters;
-            this.headers = headers;
-            this.bytes = body;
-            this.json = null;
+    private static InputStream decode(HttpsURLConnection connection, InputStream wire) throws IOException {
+        String encoding = connection.getContentEncoding();
+        if (GZIP.equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(wire);
+        } else if (DEFLATE.equalsIgnoreCase(encoding)) {
+            return new InflaterInputStream(wire);
         }
+        return wire;
+    }
+
+    /**
+     * Gzip a request body.
+     */
+    static byte[] compress(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 2 + 32);
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(body);
+        gzip.close();
+        return bytes.toByteArray();
+    }
 
-        /**
-         * Request with json
-         */
-        ApiRequest(String endpoint, Map<String, String> parameters, Map<String,String> headers, JSONObject body) {
-            this.endpoint = endpoint;
-            this.parameters = parameters;
-            this.headers = headers;
-            this.bytes = null;
-            this.json = body;
+    /**
+     * Read an InputStream to the end and close it. Consuming the whole body is what allows the
+     * underlying socket to return to the keep-alive pool instead of being torn down.
+     */
+    static private String readFully(InputStream stream, int length) throws IOException {
+        try {
+            return read(stream, length);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Discard whatever remains of a response body so the connection can be reused.
+     */
+    static void drain(InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+
+        try {
+            byte[] buffer = BufferPool.acquire(BufferPool.BUFFER_SIZE);
+            try {
+                while (stream.read(buffer) != -1) {
+                    // discard
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+        } catch (IOException e) {
+            // the connection is unusable anyway, nothing left to reclaim
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Release a connection once a request has completed. On success the response body has
+     * already been consumed, so the socket is left open for the keep-alive pool. Only
+     * connections that failed are disconnected.
+     */
+    static void release(HttpsURLConnection connection, boolean failed) {
+        if (connection == null) {
+            return;
         }
 
-        /**
-         * Request with no body or parameters (i.e., for opening a stream)
-         */
-        ApiRequest(String endpoint, Map<String,String> headers) {
-            this.endpoint = endpoint;
-            this.parameters = null;
-            this.headers = headers;
-            this.bytes = null;
-            this.json = null;
+        if (failed) {
+            connection.disconnect();
+            return;
         }
 
-        String endpoint;
-        Map<String, String> parameters;
-        Map<String, String> headers;
-        byte[] bytes;
-        JSONObject json;
+        drain(connection.getErrorStream());
+    }
+
+    /**
+     * Convert an InputStream into a String. The bytes are collected in a buffer sized from the
+     * expected length, if known, and decoded as UTF-8 once at the end.
+     * @param length The expected number of bytes, or -1 if unknown.
+     */
+    static private String read(InputStream stream, int length) throws IOException {
+        byte[] bytes = readBytes(stream, length);
+        return new String(bytes, 0, bytes.length, ENCODING);
+    }
+
+    /**
+     * Read an InputStream to the end, without closing it. With a known length, the bytes are read
+     * straight into an array of that size, which is returned as is when the stream holds exactly
+     * that many. Only bodies of unknown length go through a pooled buffer and are copied out.
+     * @param length The expected number of bytes, or -1 if unknown.
+     * @return Exactly the bytes read.
+     */
+    static byte[] readBytes(InputStream stream, int length) throws IOException {
+        byte[] pooled = length > 0 ? null : BufferPool.acquire(BufferPool.BUFFER_SIZE);
+        // don't trust a huge Content-Length with an allocation up front
+        byte[] buffer = pooled != null ? pooled : new byte[Math.min(length, MAX_PRESIZED_BODY)];
+        try {
+            int count = 0;
+            while (true) {
+                if (count == buffer.length) {
+                    // only grow if there really is more than expected (or no length was given)
+                    int next = stream.read();
+                    if (next == -1) {
+                        break;
+                    }
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    buffer[count++] = (byte) next;
+                }
+
+                int bytesRead = stream.read(buffer, count, buffer.length - count);
+                if (bytesRead == -1) {
+                    break;
+                }
+                count += bytesRead;
+            }
+
+            // an array nobody else holds, filled exactly, needs no copy
+            return buffer != pooled && count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+        } finally {
+            BufferPool.release(pooled);
+        }
     }
 
     private String mBaseUrl;
-    protected ResponseListener mListener;
+    private volatile ConnectionPermits mConnectionPermits;
+    private volatile SSLSocketFactory mSocketFactory;
+    protected volatile TransportMetrics mMetrics;
+    protected volatile Executor mExecutor;
+    private volatile int mConnectTimeout;
+    private volatile int mReadTimeout;
+    private volatile long mTimeout;
 
     static final String ENCODING = "UTF-8";
     static final String REQUEST_METHOD = "POST";
     static final int DEFAULT_ERROR_CODE = 501;
     static final int DEFAULT_SUCCESS_CODE = 200;
+    static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+    static final String CONTENT_ENCODING = "Content-Encoding";
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    static final String SUPPORTED_ENCODINGS = GZIP + ", " + DEFLATE;
+    private static final int MAX_PRESIZED_BODY = 1024 * 1024;
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Parse RFC 1123 dates such as "Tue, 14 Mar 2017 09:26:53 +0000", as sent in last_modified.
+ * The common layout is parsed by hand; anything else falls back to a SimpleDateFormat kept per
+ * thread. The last value parsed is remembered, since the same date repeats for as long as a
+ * project version is live. Safe to use from any thread.
+ */
+class HttpDate {
+    /**
+     * Parse a date, giving the same result as SimpleDateFormat with the pattern
+     * "EEE, dd MMM yyyy kk:mm:ss Z".
+     * @return A new Date, which the caller may modify.
+     * @throws ParseException If the value is not a date.
+     */
+    static Date parse(String value) throws ParseException {
+        Cached cached = sLast;
+        if (cached != null && cached.mValue.equals(value)) {
+            return new Date(cached.mTime);
+        }
+
+        long time = parseFast(value);
+        if (time == INVALID) {
+            time = FORMAT.get().parse(value).getTime();
+        }
+
+        sLast = new Cached(value, time);
+        return new Date(time);
+    }
+
+    /**
+     * Parse exactly "EEE, dd MMM yyyy kk:mm:ss +hhmm" (or GMT/UTC in place of the offset).
+     * @return Milliseconds since the epoch, or INVALID if the value needs the full parser.
+     */
+    static long parseFast(String value) {
+        int length = value.length();
+        if (length != 29 && length != 31) {
+            return INVALID;
+        }
+        if (value.charAt(3) != ',' || value.charAt(4) != ' ' || value.charAt(7) != ' '
+                || value.charAt(11) != ' ' || value.charAt(16) != ' ' || value.charAt(19) != ':'
+                || value.charAt(22) != ':' || value.charAt(25) != ' ') {
+            return INVALID;
+        }
+
+        int day = digits(value, 5, 2);
+        int month = month(value, 8);
+        int year = digits(value, 12, 4);
+        int hour = digits(value, 17, 2);
+        int minute = digits(value, 20, 2);
+        int second = digits(value, 23, 2);
+        if (day < 1 || day > 31 || month < 0 || year < 0 || hour < 0 || hour > 24
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        // "kk" counts hours 1-24, where 24 is midnight
+        if (hour == 24) {
+            hour = 0;
+        }
+
+        int offsetMinutes;
+        if (length == 29) {
+            // "GMT" or "UTC"
+            if (!value.regionMatches(26, "GMT", 0, 3) && !value.regionMatches(26, "UTC", 0, 3)) {
+                return INVALID;
+            }
+            offsetMinutes = 0;
+        } else {
+            char sign = value.charAt(26);
+            int hours = digits(value, 27, 2);
+            int minutes = digits(value, 29, 2);
+            if ((sign != '+' && sign != '-') || hours < 0 || minutes < 0 || minutes > 59) {
+                return INVALID;
+            }
+            offsetMinutes = (hours * 60 + minutes) * (sign == '-' ? -1 : 1);
+        }
+
+        // a day that doesn't exist in the month (e.g. 31 Apr) is left to the lenient parser
+        if (day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+
+        long days = daysFromEpoch(year, month + 1, day);
+        long seconds = days * 86400 + hour * 3600 + minute * 60 + second - offsetMinutes * 60L;
+        return seconds * 1000;
+    }
+
+    /**
+     * @return The value of count decimal digits, or -1 if any character is not a digit.
+     */
+    private static int digits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * @return The month from 0 (January) to 11, or -1 if not recognized.
+     */
+    private static int month(String value, int start) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (value.regionMatches(start, MONTHS[i], 0, 3)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 1) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return DAYS_IN_MONTH[month];
+    }
+
+    /**
+     * Count days between 1970-01-01 and a date in the proleptic Gregorian calendar.
+     * @param month 1 (January) to 12.
+     */
+    private static long daysFromEpoch(int year, int month, int day) {
+        // shift the year to start in March, so the leap day falls at the end
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * A value and the time it parsed to, swapped in as a unit so readers never see a mismatch
+     */
+    private static class Cached {
+        Cached(String value, long time) {
+            mValue = value;
+            mTime = time;
+        }
+
+        final String mValue;
+        final long mTime;
+    }
+
+    static final long INVALID = Long.MIN_VALUE;
+    static final String PATTERN = "EEE, dd MMM yyyy kk:mm:ss Z";
+
+    private static final String[] MONTHS = {
+            "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private static final ThreadLocal<SimpleDateFormat> FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(PATTERN, Locale.US);
+        }
+    };
+
+    private static volatile Cached sLast;
+}
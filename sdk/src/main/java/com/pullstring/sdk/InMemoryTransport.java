@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * <p>
+ * A Transport that never touches the network. Requests are recorded and answered, in order,
+ * with responses queued up ahead of time. Handy for tests and for benchmarking the rest of the
+ * SDK without network noise.
+ * </p><p>
+ * Example:
+ * </p><pre><code>
+ * InMemoryTransport transport = new InMemoryTransport();
+ * transport.enqueue("{\"conversation\": \"abc\", \"outputs\": []}");
+ *
+ * Conversation conversation = new Conversation(listener, transport);
+ * conversation.start(MY_PROJECT, request);
+ * </code></pre>
+ */
+public class InMemoryTransport extends Transport {
+    public InMemoryTransport() {
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Queue a response to be returned for the next request.
+     * @param response The Response to return.
+     */
+    public synchronized void enqueue(Response response) {
+        mResponses.add(response);
+    }
+
+    /**
+     * Queue a raw JSON body, as the Web API would return it, for the next request.
+     * @param json The response body.
+     */
+    public void enqueue(String json) {
+        enqueue(HttpClient.parse(json, null));
+    }
+
+    /**
+     * Get every request made so far, in the order they were made.
+     * @return An ArrayList of requests.
+     */
+    public synchronized ArrayList<ApiRequest> getRequests() {
+        return new ArrayList<>(mRequests);
+    }
+
+    /**
+     * Get the bytes written to the most recently closed UploadStream.
+     * @return The uploaded bytes, or null if no stream has been closed.
+     */
+    public synchronized byte[] getLastUpload() {
+        return mLastUpload;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RequestHandle post(ApiRequest request, ResponseListener listener) {
+        synchronized (this) {
+            mRequests.add(request);
+        }
+
+        Delivery delivery = new Delivery(listener);
+        delivery.respond();
+        return delivery;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RequestHandle openStream(ApiRequest request, final OpenStreamListener openListener,
+                                    ResponseListener listener) {
+        synchronized (this) {
+            mRequests.add(request);
+        }
+
+        final Delivery delivery = new Delivery(listener);
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final UploadStream stream = new UploadStream() {
+            @Override
+            public OutputStream getOutputStream() {
+                return buffer;
+            }
+
+            @Override
+            public void close() {
+                synchronized (InMemoryTransport.this) {
+                    mLastUpload = buffer.toByteArray();
+                }
+                delivery.respond();
+            }
+        };
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!delivery.isCancelled()) {
+                    openListener.onOpen(stream);
+                }
+            }
+        });
+
+        return delivery;
+    }
+
+    /**
+     * Deliver the next queued response on the main thread, as a network transport would
+     */
+    private class Delivery extends RequestHandle implements Runnable {
+        Delivery(ResponseListener listener) {
+            mListener = listener;
+        }
+
+        void respond() {
+            synchronized (this) {
+                if (mScheduled) {
+                    return;
+                }
+                mScheduled = true;
+            }
+            mHandler.post(this);
+        }
+
+        @Override
+        public void run() {
+            Response response;
+            synchronized (this) {
+                if (mDelivered) {
+                    return;
+                }
+                mDelivered = true;
+            }
+
+            if (isCancelled()) {
+                response = HttpClient.getErrorResponse(Status.InternalError.CANCELLED.getValue(),
+                        "Request cancelled");
+            } else {
+                synchronized (InMemoryTransport.this) {
+                    response = mResponses.poll();
+                }
+
+                if (response == null) {
+                    response = HttpClient.getErrorResponse(Status.InternalError.BAD_REQUEST.getValue(),
+                            "No response queued");
+                }
+            }
+
+            if (mListener != null) {
+                mListener.onResponse(response);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (mDelivered) {
+                    return;
+                }
+                mCancelled = true;
+            }
+
+            // an open stream only completes once it is closed, so complete it now
+            respond();
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        private final ResponseListener mListener;
+        private boolean mScheduled;
+        private boolean mDelivered;
+        private boolean mCancelled;
+    }
+
+    private final Handler mHandler;
+    private final LinkedList<Response> mResponses = new LinkedList<>();
+    private final ArrayList<ApiRequest> mRequests = new ArrayList<>();
+    private byte[] mLastUpload;
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Encode a request body as UTF-8 JSON straight into a byte buffer that is kept and reused from
+ * one request to the next, rather than building a JSONObject, then a String, then the bytes.
+ * Values are written the way JSONObject.toString() would write them.
+ * <p>
+ * A writer is not thread-safe. Each Conversation has its own, which its RequestPipeline only
+ * uses for one request at a time.
+ * </p>
+ */
+class JsonBodyWriter {
+    /**
+     * Start a new body, discarding whatever was written before.
+     */
+    JsonBodyWriter reset() {
+        mCount = 0;
+        mComma = false;
+        if (mBuffer.length > MAX_RETAINED_SIZE) {
+            // don't hold on to the buffer from one unusually large body
+            mBuffer = new byte[INITIAL_SIZE];
+        }
+        return this;
+    }
+
+    JsonBodyWriter beginObject() {
+        separate();
+        writeByte('{');
+        mComma = false;
+        return this;
+    }
+
+    JsonBodyWriter endObject() {
+        writeByte('}');
+        mComma = true;
+        return this;
+    }
+
+    JsonBodyWriter beginArray() {
+        separate();
+        writeByte('[');
+        mComma = false;
+        return this;
+    }
+
+    JsonBodyWriter endArray() {
+        writeByte(']');
+        mComma = true;
+        return this;
+    }
+
+    /**
+     * Write the name of the next property in an object.
+     */
+    JsonBodyWriter name(String name) {
+        separate();
+        writeString(name);
+        writeByte(':');
+        mComma = false;
+        return this;
+    }
+
+    JsonBodyWriter value(String value) {
+        separate();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        mComma = true;
+        return this;
+    }
+
+    JsonBodyWriter value(long value) {
+        separate();
+        writeAscii(Long.toString(value));
+        mComma = true;
+        return this;
+    }
+
+    JsonBodyWriter value(boolean value) {
+        separate();
+        writeAscii(value ? "true" : "false");
+        mComma = true;
+        return this;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the number is NaN or infinite, which JSON can't express.
+     */
+    JsonBodyWriter value(Number value) {
+        separate();
+        writeAscii(numberToString(value));
+        mComma = true;
+        return this;
+    }
+
+    /**
+     * Write any value a request body may hold: null, a String, Number or Boolean, a Map or
+     * Collection of those, or a JSONObject or JSONArray. Anything else is written as its
+     * toString(), like JSONObject does.
+     * @throws IllegalArgumentException If a number is NaN or infinite.
+     */
+    JsonBodyWriter value(Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return value((String) null);
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            return value((Number) value);
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> kv : ((Map<?, ?>) value).entrySet()) {
+                name(String.valueOf(kv.getKey()));
+                value(kv.getValue());
+            }
+            return endObject();
+        } else if (value instanceof Collection) {
+            beginArray();
+            for (Object item : (Collection<?>) value) {
+                value(item);
+            }
+            return endArray();
+        } else if (value instanceof JSONObject || value instanceof JSONArray) {
+            // already JSON, so copy it over as is
+            separate();
+            writeUtf8(value.toString());
+            mComma = true;
+            return this;
+        }
+
+        return value(value.toString());
+    }
+
+    /**
+     * Copy out the body. The request keeps the copy, since it may be sent more than once (a
+     * retry, a hedge, or a resend without compression) after this writer moves on to the next
+     * body.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(mBuffer, mCount);
+    }
+
+    /**
+     * Format a number as JSONObject.numberToString() does, so whole doubles lose their ".0".
+     */
+    static String numberToString(Number number) {
+        double d = number.doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new IllegalArgumentException("Forbidden numeric value: " + number);
+        }
+
+        if (number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte) {
+            return number.toString();
+        }
+
+        if (number.equals(NEGATIVE_ZERO)) {
+            return "-0";
+        }
+
+        long l = number.longValue();
+        if (d == l) {
+            return Long.toString(l);
+        }
+        return number.toString();
+    }
+
+    private void separate() {
+        if (mComma) {
+            writeByte(',');
+        }
+    }
+
+    /**
+     * Write a quoted, escaped string, escaping the same characters JSONStringer does.
+     */
+    private void writeString(String value) {
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    writeByte('\\');
+                    writeByte(c);
+                    break;
+                case '\t':
+                    writeAscii("\\t");
+                    break;
+                case '\b':
+                    writeAscii("\\b");
+                    break;
+                case '\n':
+                    writeAscii("\\n");
+                    break;
+                case '\r':
+                    writeAscii("\\r");
+                    break;
+                case '\f':
+                    writeAscii("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        writeAscii("\\u00");
+                        writeByte(HEX[c >> 4]);
+                        writeByte(HEX[c & 0xF]);
+                    } else {
+                        i = writeChar(value, i);
+                    }
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeUtf8(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            i = writeChar(value, i);
+        }
+    }
+
+    /**
+     * Encode the character at index as UTF-8, along with the low half of a surrogate pair.
+     * @return The index of the last char consumed.
+     */
+    private int writeChar(String value, int index) {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            writeByte(c);
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            mBuffer[mCount++] = (byte) (0xC0 | (c >> 6));
+            mBuffer[mCount++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            ensureCapacity(4);
+            mBuffer[mCount++] = (byte) (0xF0 | (codePoint >> 18));
+            mBuffer[mCount++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            mBuffer[mCount++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            mBuffer[mCount++] = (byte) (0x80 | (codePoint & 0x3F));
+            return index + 1;
+        } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+            // unpaired, which String.getBytes() also replaces with '?'
+            writeByte('?');
+        } else {
+            ensureCapacity(3);
+            mBuffer[mCount++] = (byte) (0xE0 | (c >> 12));
+            mBuffer[mCount++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            mBuffer[mCount++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return index;
+    }
+
+    private void writeAscii(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            mBuffer[mCount++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        mBuffer[mCount++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mCount + extra > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mCount + extra));
+        }
+    }
+
+    private byte[] mBuffer = new byte[INITIAL_SIZE];
+    private int mCount;
+    private boolean mComma;
+
+    private static final int INITIAL_SIZE = 512;
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+    private static final Double NEGATIVE_ZERO = -0d;
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+}
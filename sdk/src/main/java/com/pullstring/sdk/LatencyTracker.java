@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.Arrays;
+
+/**
+ * Remember the latencies of the most recent requests to estimate percentiles from.
+ */
+class LatencyTracker {
+    synchronized void add(long latency) {
+        mSamples[mNext] = latency;
+        mNext = (mNext + 1) % mSamples.length;
+        if (mCount < mSamples.length) {
+            mCount++;
+        }
+    }
+
+    /**
+     * Estimate a latency percentile.
+     * @param percentile Between 0 and 1.
+     * @return The latency in milliseconds, or -1 if there are too few samples to tell.
+     */
+    long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (mCount < MIN_SAMPLES) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(mSamples, mCount);
+        }
+
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private final long[] mSamples = new long[MAX_SAMPLES];
+    private int mNext;
+    private int mCount;
+
+    private static final int MAX_SAMPLES = 128;
+    private static final int MIN_SAMPLES = 20;
+}
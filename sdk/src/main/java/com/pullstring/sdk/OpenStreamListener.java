@@ -6,12 +6,13 @@
  */
 package com.pullstring.sdk;
 
-import java.io.OutputStream;
-
 /**
- * Defines the interface for waiting for the StreamingClient's stream to connect and
- * become available.
+ * Defines the interface for waiting for a Transport's stream to connect and become available.
  */
-abstract class OpenStreamListener {
-    abstract void onOpen(OutputStream os);
-}
\ No newline at end of file
+public abstract class OpenStreamListener {
+    /**
+     * Called on the main thread once the stream is ready to be written to.
+     * @param stream The open UploadStream.
+     */
+    public abstract void onOpen(UploadStream stream);
+}
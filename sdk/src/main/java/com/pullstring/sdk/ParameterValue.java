@@ -15,7 +15,8 @@ import java.util.Iterator;
 import java.util.Map;
 
 /**
- * An arbitrary value passed to an output or entity within a Response from the Web API.
+ * An arbitrary value passed to an output or entity within a Response from the Web API. Nested
+ * arrays and dictionaries are wrapped in ParameterValues only when they are first accessed.
  */
 public class ParameterValue {
     public ParameterValue(Object param) {
@@ -51,16 +52,22 @@ public class ParameterValue {
      * @return The value as an ArrayList or an empty ArrayList if the original value was not an
      * array.
      */
-    public ArrayList<ParameterValue> getArray() {
+    public synchronized ArrayList<ParameterValue> getArray() {
+        if (mArray == null) {
+            mArray = toArray(mObject);
+        }
         return mArray;
     }
 
     /**
      * Get the value safely case to a dictionary.
      * @return The value as a HashMap or and empty HashMap if the original value was not a
-     * dictionary
+     * dictionary.
      */
-    public HashMap<String, ParameterValue> getDictionary() {
+    public synchronized HashMap<String, ParameterValue> getDictionary() {
+        if (mDictionary == null) {
+            mDictionary = toDictionary(mObject);
+        }
         return mDictionary;
     }
 
@@ -98,63 +105,66 @@ public class ParameterValue {
     }
 
     /**
-     * Cast to various types, falling back to defaults as necessary.
+     * Cast to scalar types, falling back to defaults as necessary. Arrays and dictionaries are
+     * only converted when getArray() or getDictionary() is first called.
      */
-    private void updateParamValues(Object param) {
-
+    private synchronized void updateParamValues(Object param) {
         mObject = param;
         mString = (param instanceof String) ? (String)param : "";
         mDouble = (param instanceof Double) ? (Double)param : 0.0;
         mBool = (param instanceof Boolean) ? (Boolean)param : false;
         mArray = null;
         mDictionary = null;
+    }
 
+    private static ArrayList<ParameterValue> toArray(Object param) {
         if (param instanceof JSONArray) {
             JSONArray arr = (JSONArray)param;
-            mArray = new ArrayList<>();
+            ArrayList<ParameterValue> array = new ArrayList<>(arr.length());
             for (int i = 0; i < arr.length(); i++) {
                 Object p = arr.opt(i);
                 if (p != null) {
-                    ParameterValue parameter = new ParameterValue(p);
-                    mArray.add(parameter);
+                    array.add(new ParameterValue(p));
                 }
             }
+            return array;
         }
 
         if (param instanceof ArrayList) {
             ArrayList<?> list = (ArrayList<?>)param;
-            mArray = new ArrayList<>();
+            ArrayList<ParameterValue> array = new ArrayList<>(list.size());
             for (Object p : list) {
                 if (p instanceof ParameterValue) {
-                    mArray.add((ParameterValue) p);
+                    array.add((ParameterValue) p);
                 }
             }
+            return array;
         }
 
+        // prefer an empty ArrayList over null
+        return new ArrayList<>();
+    }
+
+    private static HashMap<String, ParameterValue> toDictionary(Object param) {
         if (param instanceof JSONObject) {
-            mDictionary = getParameterValueDict((JSONObject)param);
+            return getParameterValueDict((JSONObject)param);
         }
 
         if (param instanceof HashMap) {
             HashMap<?,?> map = (HashMap<?,?>)param;
-            mDictionary = new HashMap<>();
+            HashMap<String, ParameterValue> dictionary = new HashMap<>();
             for(Map.Entry<?,?> kv : map.entrySet()) {
                 if (kv.getKey() instanceof String && kv.getValue() instanceof ParameterValue) {
                     String key = (String)kv.getKey();
                     ParameterValue val = (ParameterValue)kv.getValue();
-                    mDictionary.put(key, val);
+                    dictionary.put(key, val);
                 }
             }
+            return dictionary;
         }
 
-        // prefer an empty ArrayList or HashMap over null
-        if (mArray == null) {
-            mArray = new ArrayList<>();
-        }
-
-        if (mDictionary == null) {
-            mDictionary = new HashMap<>();
-        }
+        // prefer an empty HashMap over null
+        return new HashMap<>();
     }
 
     private String mString;
@@ -13,6 +13,11 @@ import org.json.JSONObject;
  * Describe a single phoneme for an audio response, e.g., to drive automatic lip sync.
  */
 public class Phoneme {
+    Phoneme(String name, double secondsSinceStart) {
+        mName = name;
+        mSecondsSinceStart = secondsSinceStart;
+    }
+
     public Phoneme(JSONObject json) {
         if (json.has(Keys.Name))  {
             mName = json.optString(Keys.Name);
@@ -27,6 +32,7 @@ public class Phoneme {
      * @return The phoneme.
      */
     public String getName() {
+        checkNotRecycled();
         return mName;
     }
 
@@ -43,6 +49,7 @@ public class Phoneme {
      * @return The offset, in seconds.
      */
     public double getSecondsSinceStart() {
+        checkNotRecycled();
         return mSecondsSinceStart;
     }
 
@@ -54,6 +61,27 @@ public class Phoneme {
         this.mSecondsSinceStart = mSecondsSinceStart;
     }
 
+    /**
+     * Reuse a pooled Phoneme for a new value.
+     */
+    void revive(String name, double secondsSinceStart) {
+        mName = name;
+        mSecondsSinceStart = secondsSinceStart;
+        mRecycled = false;
+        mRecycledAt = null;
+    }
+
+    void markRecycled(Throwable recycledAt) {
+        mRecycled = true;
+        mRecycledAt = recycledAt;
+    }
+
+    private void checkNotRecycled() {
+        ResponsePool.checkNotRecycled(mRecycled, mRecycledAt);
+    }
+
     private String mName;
     private double mSecondsSinceStart;
+    private volatile boolean mRecycled;
+    private Throwable mRecycledAt;
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A table assigning small integer codes to phoneme names. Names come from the Web API, so the
+ * table stops growing once it is full. A real phoneme set is far smaller than the limit, and
+ * any names past it share the code PhonemeTimeline.UNKNOWN.
+ */
+class PhonemeCodes {
+    /**
+     * @param maxCodes The most names to assign codes to.
+     */
+    PhonemeCodes(int maxCodes) {
+        mMaxCodes = maxCodes;
+    }
+
+    /**
+     * Get the code used for a name, assigning one if the name hasn't been seen before.
+     * @return The code, or PhonemeTimeline.UNKNOWN if the table is full.
+     */
+    synchronized int getCode(String name) {
+        if (name == null) {
+            name = "";
+        }
+
+        Integer code = mCodes.get(name);
+        if (code == null) {
+            if (mNames.size() >= mMaxCodes) {
+                return PhonemeTimeline.UNKNOWN;
+            }
+            code = mNames.size();
+            mNames.add(name.intern());
+            mCodes.put(name, code);
+        }
+        return code;
+    }
+
+    /**
+     * @return The name a code stands for, or null if no name has that code.
+     */
+    synchronized String getName(int code) {
+        return code >= 0 && code < mNames.size() ? mNames.get(code) : null;
+    }
+
+    private final int mMaxCodes;
+    private final HashMap<String, Integer> mCodes = new HashMap<>();
+    private final ArrayList<String> mNames = new ArrayList<>();
+}
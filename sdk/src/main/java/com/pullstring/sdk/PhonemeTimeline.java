@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * <p>
+ * A compact, read-only view of a line's phonemes, for driving lip sync every frame. Start times
+ * are kept in a primitive array and phoneme names are replaced by small integer codes, which
+ * stay the same for the life of the process (see getPhonemeName()).
+ * </p><p>
+ * Use phonemeAt() to look up the mouth shape at any time in O(log n), or a Cursor to follow
+ * playback as it advances. Neither allocates.
+ * </p><p>
+ * Example:
+ * </p><pre><code>
+ * PhonemeTimeline.Cursor cursor = dialog.getPhonemeTimeline().newCursor();
+ *
+ * // on each frame
+ * String name = PhonemeTimeline.getPhonemeName(cursor.advance(player.getCurrentPosition() / 1000.0));
+ * if (name != null) {
+ *     avatar.setMouthShape(name);
+ * }
+ * </code></pre>
+ */
+public class PhonemeTimeline {
+    /**
+     * Build a timeline from a list of phonemes, sorted by start time.
+     * @param phonemes The phonemes, or null for an empty timeline.
+     */
+    public PhonemeTimeline(ArrayList<Phoneme> phonemes) {
+        int size = phonemes != null ? phonemes.size() : 0;
+        Phoneme[] sorted = new Phoneme[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = phonemes.get(i);
+        }
+        Arrays.sort(sorted, BY_START);
+
+        mStarts = new double[size];
+        mCodes = new short[size];
+        for (int i = 0; i < size; i++) {
+            mStarts[i] = sorted[i].getSecondsSinceStart();
+            mCodes[i] = (short) getPhonemeCode(sorted[i].getName());
+        }
+    }
+
+    /**
+     * Get the number of phonemes in the timeline.
+     * @return The number of phonemes.
+     */
+    public int size() {
+        return mStarts.length;
+    }
+
+    /**
+     * Get when a phoneme starts.
+     * @param index The position of the phoneme, from 0 to size() - 1.
+     * @return The offset from the start of the line, in seconds.
+     */
+    public double getStart(int index) {
+        return mStarts[index];
+    }
+
+    /**
+     * Get the code of a phoneme.
+     * @param index The position of the phoneme, from 0 to size() - 1.
+     * @return The phoneme's code.
+     */
+    public int getCode(int index) {
+        return mCodes[index];
+    }
+
+    /**
+     * Find the phoneme being spoken at a given time.
+     * @param seconds The offset from the start of the line, in seconds.
+     * @return The position of the phoneme, or -1 if the time is before the first one.
+     */
+    public int indexAt(double seconds) {
+        // find the last phoneme that starts at or before the given time
+        int low = 0;
+        int high = mStarts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mStarts[mid] <= seconds) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Get the code of the phoneme being spoken at a given time.
+     * @param seconds The offset from the start of the line, in seconds.
+     * @return The phoneme's code, or NONE if the time is before the first phoneme.
+     */
+    public int phonemeAt(double seconds) {
+        int index = indexAt(seconds);
+        return index >= 0 ? mCodes[index] : NONE;
+    }
+
+    /**
+     * Create a Cursor to follow playback of this timeline from the start.
+     * @return A new Cursor.
+     */
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Get the code used for a phoneme name, assigning one if the name hasn't been seen before.
+     * Only the first MAX_PHONEMES distinct names get codes of their own.
+     * @param name The phoneme name, e.g. "ah".
+     * @return The code, which is the same every time for the same name, or UNKNOWN if the
+     * name arrived after MAX_PHONEMES others.
+     */
+    public static int getPhonemeCode(String name) {
+        return sCodes.getCode(name);
+    }
+
+    /**
+     * Get the phoneme name a code stands for.
+     * @param code A code returned by phonemeAt() or getCode().
+     * @return The phoneme name, or null for NONE, UNKNOWN or an unknown code.
+     */
+    public static String getPhonemeName(int code) {
+        return sCodes.getName(code);
+    }
+
+    /**
+     * Follow a timeline as playback moves forward. Advancing is O(1) per phoneme passed, and
+     * seeking backwards falls back to a binary search. A Cursor is not thread-safe.
+     */
+    public class Cursor {
+        /**
+         * Move to the given playback time.
+         * @param seconds The offset from the start of the line, in seconds.
+         * @return The code of the phoneme being spoken, or NONE if before the first phoneme.
+         */
+        public int advance(double seconds) {
+            if (mIndex >= 0 && seconds < mStarts[mIndex]) {
+                // playback went backwards
+                mIndex = indexAt(seconds);
+            } else {
+                while (mIndex + 1 < mStarts.length && mStarts[mIndex + 1] <= seconds) {
+                    mIndex++;
+                }
+            }
+            return mIndex >= 0 ? mCodes[mIndex] : NONE;
+        }
+
+        /**
+         * Get the position of the current phoneme.
+         * @return The index into the timeline, or -1 if before the first phoneme.
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        /**
+         * Go back to the start of the line.
+         */
+        public void reset() {
+            mIndex = -1;
+        }
+
+        private int mIndex = -1;
+    }
+
+    /**
+     * The code returned when no phoneme is being spoken.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * The code of a phoneme whose name couldn't be given a code of its own.
+     */
+    public static final int UNKNOWN = -2;
+
+    /**
+     * The most distinct phoneme names given their own codes.
+     */
+    public static final int MAX_PHONEMES = 1024;
+
+    private final double[] mStarts;
+    private final short[] mCodes;
+
+    private static final PhonemeCodes sCodes = new PhonemeCodes(MAX_PHONEMES);
+
+    private static final Comparator<Phoneme> BY_START = new Comparator<Phoneme>() {
+        @Override
+        public int compare(Phoneme a, Phoneme b) {
+            return Double.compare(a.getSecondsSinceStart(), b.getSecondsSinceStart());
+        }
+    };
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.Map;
+
+/**
+ * Build percent-encoded query strings. Everything but the characters RFC 3986 leaves unreserved
+ * is encoded as UTF-8, so values containing '&amp;', '=', '#', spaces or non-ASCII text arrive
+ * intact. Each string is encoded in a single pass. Nothing is cached here; a Request's
+ * RequestEnvelope builds its query once and reuses it until the Request changes.
+ */
+class QueryBuilder {
+    /**
+     * Convert a dictionary of parameters into a query string. Parameters whose value is null are
+     * left out.
+     * @return The query string, without the leading '?'.
+     */
+    static String build(Map<String, String> parameters) {
+        StringBuilder sb = new StringBuilder(INITIAL_CAPACITY);
+        for (Map.Entry<String, String> kv : parameters.entrySet()) {
+            if (kv.getValue() == null) {
+                continue;
+            }
+
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            appendEncoded(sb, kv.getKey());
+            sb.append('=');
+            appendEncoded(sb, kv.getValue());
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Append a string, percent-encoding everything but unreserved characters. An unpaired
+     * surrogate is encoded as '?', as String.getBytes() would.
+     */
+    static void appendEncoded(StringBuilder sb, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (isUnreserved(c)) {
+                sb.append(c);
+            } else if (c < 0x80) {
+                appendByte(sb, c);
+            } else if (c < 0x800) {
+                appendByte(sb, 0xC0 | (c >> 6));
+                appendByte(sb, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendByte(sb, 0xF0 | (codePoint >> 18));
+                appendByte(sb, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendByte(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendByte(sb, 0x80 | (codePoint & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                appendByte(sb, '?');
+            } else {
+                appendByte(sb, 0xE0 | (c >> 12));
+                appendByte(sb, 0x80 | ((c >> 6) & 0x3F));
+                appendByte(sb, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static void appendByte(StringBuilder sb, int b) {
+        sb.append('%');
+        sb.append(HEX[(b >> 4) & 0xF]);
+        sb.append(HEX[b & 0xF]);
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int INITIAL_CAPACITY = 256;
+}
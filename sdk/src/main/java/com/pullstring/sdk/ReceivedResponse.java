@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+
+/**
+ * A response that has been read off the network but not parsed yet, or one that needs no
+ * parsing, such as an error. Reading happens on the I/O thread that made the request, and
+ * parsing on the SDK's parse pool, so network threads never wait on JSON.
+ */
+class ReceivedResponse {
+    /**
+     * @param response A Response that is already complete.
+     */
+    ReceivedResponse(Response response) {
+        mResponse = response;
+        mBody = null;
+        mEndpoint = null;
+        mParser = null;
+    }
+
+    /**
+     * @param body The decoded response body.
+     * @param endpoint The value of the Location header, if any.
+     * @param parser The parser to use, or null for the default.
+     */
+    ReceivedResponse(byte[] body, String endpoint, ResponseParser parser) {
+        mResponse = null;
+        mBody = body;
+        mEndpoint = endpoint;
+        mParser = parser != null ? parser : new ResponseParser();
+    }
+
+    /**
+     * Parse the body on the parse pool, then hand the Response to the listener on the main
+     * thread. Responses that are already complete skip the parse pool.
+     * @param listener Receives the Response, or null to drop it.
+     */
+    void deliver(final ResponseListener listener) {
+        Runnable parse = new Runnable() {
+            @Override
+            public void run() {
+                final Response response = parse();
+                sMainThread.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (listener != null) {
+                            listener.onResponse(response);
+                        }
+                    }
+                });
+            }
+        };
+
+        if (mResponse != null) {
+            parse.run();
+        } else {
+            SdkExecutors.parser().execute(parse);
+        }
+    }
+
+    /**
+     * Parse the body, if that hasn't been done already, on the calling thread.
+     */
+    Response parse() {
+        if (mResponse != null) {
+            return mResponse;
+        }
+
+        try {
+            return mParser.parse(mBody, mEndpoint);
+        } catch (IOException | RuntimeException e) {
+            // malformed JSON, or a value of the wrong type where the parser expected another
+            return HttpClient.getErrorResponse(Status.InternalError.PARSING.getValue(), e.getLocalizedMessage());
+        }
+    }
+
+    private final Response mResponse;
+    private final byte[] mBody;
+    private final String mEndpoint;
+    private final ResponseParser mParser;
+
+    private static final Handler sMainThread = new Handler(Looper.getMainLooper());
+}
@@ -6,6 +6,8 @@
  */
 package com.pullstring.sdk;
 
+import java.util.EnumSet;
+
 /**
  * Describe the parameters for a request to the PullString Web API.
  */
@@ -41,6 +43,7 @@ public class Request {
      */
     public void setApiKey(String apiKey) {
         this.mApiKey = apiKey;
+        invalidateEnvelope();
     }
 
     /**
@@ -58,7 +61,11 @@ public class Request {
      * @param conversationId The new conversation id.
      */
     public void setConversationId(String conversationId) {
-        mConversationId = conversationId;
+        // every response carries the ID, but it rarely changes
+        if (conversationId == null ? mConversationId != null : !conversationId.equals(mConversationId)) {
+            mConversationId = conversationId;
+            invalidateEnvelope();
+        }
     }
 
     /**
@@ -105,6 +112,7 @@ public class Request {
      */
     public void setLanguage(String language) {
         this.mLanguage = language;
+        invalidateEnvelope();
     }
 
     /**
@@ -157,6 +165,7 @@ public class Request {
      */
     public void setRestartIfModified(boolean restartIfModified) {
         this.mRestartIfModified = restartIfModified;
+        invalidateEnvelope();
     }
 
     /**
@@ -174,6 +183,7 @@ public class Request {
      */
     public void setIfModifiedAction(IfModifiedAction ifModifiedAction) {
         this.mIfModifiedAction = ifModifiedAction;
+        invalidateEnvelope();
     }
 
     public String getAccountId() {
@@ -182,6 +192,167 @@ public class Request {
 
     public void setAccountId(String accountId) {
         this.mAccountId = accountId;
+        invalidateEnvelope();
+    }
+
+    /**
+     * Get the overall deadline for requests made with this Request.
+     * @return The deadline in milliseconds, or 0 if the Transport's default is used.
+     */
+    public long getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * Set the overall deadline for requests made with this Request, covering waiting for a free
+     * connection, connecting, the TLS handshake, uploading, and reading the response. A request
+     * that runs out of time completes with a Status code of Status.InternalError.TIMEOUT. For
+     * audio streams, the deadline starts when endAudio() is called.
+     * @param timeout The deadline in milliseconds, or 0 to use the Transport's default.
+     */
+    public void setTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout < 0: " + timeout);
+        }
+        mTimeout = timeout;
+    }
+
+    /**
+     * Get the longest an audio stream may stay open.
+     * @return The limit in milliseconds, or 0 for no limit.
+     */
+    public long getMaxAudioDuration() {
+        return mMaxAudioDuration;
+    }
+
+    /**
+     * Set the longest an audio stream started with startAudio() may stay open. Requests are sent
+     * one at a time, so a stream that is never ended would hold up every later request. A
+     * stream still open when the limit is reached is ended as if endAudio() had been called.
+     * Defaults to one minute.
+     * @param maxAudioDuration The limit in milliseconds, or 0 for no limit.
+     */
+    public void setMaxAudioDuration(long maxAudioDuration) {
+        if (maxAudioDuration < 0) {
+            throw new IllegalArgumentException("maxAudioDuration < 0: " + maxAudioDuration);
+        }
+        mMaxAudioDuration = maxAudioDuration;
+    }
+
+    /**
+     * Check whether entity values the Web API already holds are left out of requests.
+     * @return true if unchanged entities are skipped.
+     */
+    public boolean isSkipUnchangedEntities() {
+        return mSkipUnchangedEntities;
+    }
+
+    /**
+     * Have each Conversation remember the entity values it has seen in responses and set
+     * itself, and only send the values that actually changed in setEntities() and
+     * sendIntent(). A setEntities() call that would change nothing is answered right away with
+     * a successful Response, without contacting the Web API. What is remembered is forgotten
+     * whenever other input is sent or a request fails, since either may change entities. Off by
+     * default.
+     * @param skipUnchangedEntities true to only send entity values that changed.
+     */
+    public void setSkipUnchangedEntities(boolean skipUnchangedEntities) {
+        mSkipUnchangedEntities = skipUnchangedEntities;
+    }
+
+    /**
+     * Check whether getEntities() may be answered from entity values already seen.
+     * @return true if entities are served from the cache when possible.
+     */
+    public boolean isCacheEntities() {
+        return mCacheEntities;
+    }
+
+    /**
+     * Have each Conversation remember the entity values and ETag of every response, and answer
+     * getEntities() from them when every entity asked for is known and no input that may have
+     * changed entities has been sent since. The Response is then delivered on the main thread
+     * without contacting the Web API, once any earlier requests are done. Otherwise, or if no
+     * names are given, the entities are requested from the Web API as usual. Off by default.
+     * @param cacheEntities true to serve getEntities() from the cache when possible.
+     */
+    public void setCacheEntities(boolean cacheEntities) {
+        mCacheEntities = cacheEntities;
+    }
+
+    /**
+     * Get the headers, query and endpoint for requests made with this Request, building them
+     * only if a setting they depend on has changed since they were last built.
+     */
+    synchronized RequestEnvelope getEnvelope() {
+        if (mEnvelope == null) {
+            mEnvelope = new RequestEnvelope(this);
+        }
+        return mEnvelope;
+    }
+
+    private synchronized void invalidateEnvelope() {
+        mEnvelope = null;
+    }
+
+    /**
+     * Check whether responses are decoded lazily.
+     * @return true if outputs, entities and phonemes are decoded on first use.
+     */
+    public boolean isLazyResponses() {
+        return mLazyResponses;
+    }
+
+    /**
+     * Decode a Response's outputs, entities and phonemes the first time getOutputs(),
+     * getEntities() or DialogOutput.getPhonemes() is called, instead of before the Response is
+     * delivered. Listeners that only read a few fields then skip most of the decoding work. The
+     * response body is held in memory until everything has been decoded. Off by default.
+     * @param lazyResponses true to decode responses lazily.
+     */
+    public void setLazyResponses(boolean lazyResponses) {
+        mLazyResponses = lazyResponses;
+    }
+
+    /**
+     * Get the optional parts of responses that are decoded.
+     * @return A copy of the set of ResponseFields.
+     */
+    public EnumSet<ResponseField> getResponseFields() {
+        return EnumSet.copyOf(mResponseFields);
+    }
+
+    /**
+     * Declare which optional parts of responses the app uses, e.g. leave out
+     * ResponseField.PHONEMES on platforms without lip-sync. Parts that are left out are skipped
+     * while the response is parsed and never decoded. By default all parts are decoded.
+     * @param responseFields The parts to decode.
+     */
+    public void setResponseFields(EnumSet<ResponseField> responseFields) {
+        if (responseFields == null) {
+            throw new IllegalArgumentException("responseFields == null");
+        }
+        mResponseFields = EnumSet.copyOf(responseFields);
+    }
+
+    /**
+     * Check whether Responses are built from recycled objects.
+     * @return true if Responses can be handed back with Response.recycle().
+     */
+    public boolean isRecycleResponses() {
+        return mRecycleResponses;
+    }
+
+    /**
+     * Build Responses, their Outputs and their Phonemes from objects the app has handed back
+     * with Response.recycle(), to cut down on garbage during long sessions. The app then owns
+     * each Response until it recycles it, and must not touch it afterwards; see
+     * Response.setRecycleDebugging() for catching mistakes. Has no effect with
+     * setLazyResponses(true). Off by default.
+     * @param recycleResponses true to reuse recycled Responses.
+     */
+    public void setRecycleResponses(boolean recycleResponses) {
+        mRecycleResponses = recycleResponses;
     }
 
     private String mApiKey;
@@ -194,4 +365,14 @@ public class Request {
     private IfModifiedAction mIfModifiedAction = IfModifiedAction.NOTHING;
     private boolean mRestartIfModified = true;
     private String mAccountId;
+    private long mTimeout;
+    private long mMaxAudioDuration = DEFAULT_MAX_AUDIO_DURATION;
+    private boolean mLazyResponses;
+    private boolean mRecycleResponses;
+    private boolean mSkipUnchangedEntities;
+    private boolean mCacheEntities;
+    private EnumSet<ResponseField> mResponseFields = EnumSet.allOf(ResponseField.class);
+    private RequestEnvelope mEnvelope;
+
+    private static final long DEFAULT_MAX_AUDIO_DURATION = 60 * 1000;
 }
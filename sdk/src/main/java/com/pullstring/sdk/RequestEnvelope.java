@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The parts of every Web API request that only depend on a Request's settings and the
+ * conversation ID: headers, query parameters, endpoint and URL. A Request builds its envelope
+ * once and keeps it until one of those settings changes, rather than every turn building them
+ * all again. An envelope never changes once built, so one may be shared by requests still in
+ * flight.
+ */
+class RequestEnvelope {
+    RequestEnvelope(Request request) {
+        String conversationId = request.getConversationId();
+
+        // /conversation for a new conversation. /conversation/<conversation id> for a continuing one.
+        mEndpoint = conversationId != null
+                ? Keys.ConversationEndpoint + '/' + conversationId
+                : Keys.ConversationEndpoint;
+
+        // add Authorization, Accept, and Content-Type headers
+        String authorization = "Bearer " + request.getApiKey();
+        mJsonHeaders = getHeaders(authorization, JSON_CONTENT_TYPE);
+        mAudioHeaders = getHeaders(authorization, AUDIO_CONTENT_TYPE);
+
+        // add asr_language and account (if present) to query string
+        HashMap<String, String> parameters = new HashMap<>();
+        parameters.put("asr_language", request.getLanguage());
+
+        String account = request.getAccountId();
+        if (account != null && !account.isEmpty()) {
+            parameters.put("account", account);
+        }
+
+        // only add restart_if_modified or if_modified if not default value
+        if (!request.isRestartIfModified()) {
+            parameters.put("restart_if_modified", "false");
+        } else if (request.getIfModifiedAction() != IfModifiedAction.NOTHING) {
+            parameters.put("if_modified", request.getIfModifiedAction().toString());
+        }
+
+        mParameters = Collections.unmodifiableMap(parameters);
+        mQuery = HttpClient.getQueryString(mParameters);
+    }
+
+    private static Map<String, String> getHeaders(String authorization, String contentType) {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Authorization", authorization);
+        headers.put("Accept", JSON_CONTENT_TYPE);
+        headers.put("Content-Type", contentType);
+        return Collections.unmodifiableMap(headers);
+    }
+
+    String getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * @param isAudio true for audio bodies, false for JSON.
+     */
+    Map<String, String> getHeaders(boolean isAudio) {
+        return isAudio ? mAudioHeaders : mJsonHeaders;
+    }
+
+    Map<String, String> getParameters() {
+        return mParameters;
+    }
+
+    /**
+     * Get the full URL against a base URL. The last URL built is remembered, since a
+     * conversation normally talks to a single base URL.
+     * @param withQuery Whether to include the query string.
+     */
+    String getUrl(String baseUrl, boolean withQuery) {
+        CachedUrl cached = withQuery ? mUrlWithQuery : mUrl;
+        if (cached != null && cached.mBaseUrl.equals(baseUrl)) {
+            return cached.mUrl;
+        }
+
+        String url = HttpClient.getUrl(baseUrl, mEndpoint, withQuery ? mQuery : null);
+        cached = new CachedUrl(baseUrl, url);
+        if (withQuery) {
+            mUrlWithQuery = cached;
+        } else {
+            mUrl = cached;
+        }
+        return url;
+    }
+
+    /**
+     * A base URL and the full URL built from it, swapped in together
+     */
+    private static class CachedUrl {
+        CachedUrl(String baseUrl, String url) {
+            mBaseUrl = baseUrl;
+            mUrl = url;
+        }
+
+        final String mBaseUrl;
+        final String mUrl;
+    }
+
+    private final String mEndpoint;
+    private final Map<String, String> mJsonHeaders;
+    private final Map<String, String> mAudioHeaders;
+    private final Map<String, String> mParameters;
+    private final String mQuery;
+    private volatile CachedUrl mUrl;
+    private volatile CachedUrl mUrlWithQuery;
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String AUDIO_CONTENT_TYPE = "audio/l16; rate=16000";
+}
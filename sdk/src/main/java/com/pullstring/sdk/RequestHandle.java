@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+/**
+ * <p>
+ * A handle to a request that has been queued or sent to the Web API.
+ * </p><p>
+ * Cancelling a request aborts its connection if it is in flight, or keeps it from being sent if
+ * it is still queued. The ResponseListener still receives exactly one Response for it, whose
+ * Status has the code Status.InternalError.CANCELLED, so responses keep arriving in order.
+ * Cancelling a request that has already completed does nothing.
+ * </p>
+ */
+public abstract class RequestHandle {
+    /**
+     * Cancel the request.
+     */
+    public abstract void cancel();
+
+    /**
+     * Check whether cancel() was called before the request completed.
+     * @return true if the request was cancelled.
+     */
+    public abstract boolean isCancelled();
+
+    /**
+     * Get a handle for a request that finished before it could be sent, e.g. because it was
+     * rejected locally.
+     */
+    static RequestHandle completed() {
+        return COMPLETED;
+    }
+
+    private static final RequestHandle COMPLETED = new RequestHandle() {
+        @Override
+        public void cancel() {
+            // nothing left to cancel
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.LinkedList;
+
+/**
+ * Send a Conversation's requests one at a time, in the order they were made. Each request is
+ * only built once the previous response has arrived, so it always carries the latest
+ * conversation and participant IDs. Separate Conversations have separate pipelines and run in
+ * parallel.
+ * <p>
+ * Each Step doubles as the RequestHandle returned to the app. A step cancelled while still
+ * queued is never sent, but still completes in its turn so responses stay in order.
+ * </p>
+ */
+class RequestPipeline {
+    /**
+     * @param listener Receives every response, in order, before the next request is sent.
+     */
+    RequestPipeline(ResponseListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * A single queued request
+     */
+    abstract static class Step extends RequestHandle {
+        /**
+         * Build and send the request. done must receive exactly one Response, on the main thread.
+         * @return The Transport's handle for the request.
+         */
+        abstract RequestHandle send(ResponseListener done);
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void cancel() {
+            RequestHandle sent;
+            synchronized (this) {
+                if (mCancelled || mDone) {
+                    return;
+                }
+                mCancelled = true;
+                sent = mSent;
+            }
+
+            if (sent != null) {
+                sent.cancel();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        private RequestHandle mSent;
+        private boolean mCancelled;
+        private boolean mDone;
+    }
+
+    /**
+     * Queue a request, sending it right away if nothing else is in flight.
+     * @return The step, as a handle to cancel the request with.
+     */
+    RequestHandle enqueue(Step step) {
+        synchronized (this) {
+            if (mBusy) {
+                mQueue.add(step);
+                return step;
+            }
+            mBusy = true;
+        }
+
+        dispatch(step);
+        return step;
+    }
+
+    /**
+     * Check whether there are requests in flight or waiting to be sent.
+     */
+    synchronized boolean isIdle() {
+        return !mBusy;
+    }
+
+    private void dispatch(Step step) {
+        Completion done = new Completion(step);
+        if (step.isCancelled()) {
+            done.onResponse(HttpClient.getErrorResponse(Status.InternalError.CANCELLED.getValue(),
+                    "Request cancelled"));
+            return;
+        }
+
+        RequestHandle sent = step.send(done);
+
+        boolean cancelled;
+        synchronized (step) {
+            step.mSent = sent;
+            cancelled = step.mCancelled && !step.mDone;
+        }
+
+        // cancelled while it was being sent
+        if (cancelled && sent != null) {
+            sent.cancel();
+        }
+    }
+
+    /**
+     * Hand the response on and move to the next request
+     */
+    private void complete(Response response) {
+        mListener.onResponse(response);
+
+        Step next;
+        synchronized (this) {
+            next = mQueue.poll();
+            mBusy = next != null;
+        }
+
+        if (next != null) {
+            dispatch(next);
+        }
+    }
+
+    /**
+     * Completes its step once, however often the transport calls it
+     */
+    private class Completion extends ResponseListener {
+        Completion(Step step) {
+            mStep = step;
+        }
+
+        @Override
+        public void onResponse(Response response) {
+            synchronized (mStep) {
+                if (mStep.mDone) {
+                    return;
+                }
+                mStep.mDone = true;
+            }
+            complete(response);
+        }
+
+        private final Step mStep;
+    }
+
+    private final ResponseListener mListener;
+    private final LinkedList<Step> mQueue = new LinkedList<>();
+    private boolean mBusy;
+}
@@ -10,11 +10,9 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.Locale;
 
 /**
  * Presents the output of a request to the PullString Web API.
@@ -43,16 +41,7 @@ public class Response {
         mTimedResponseInterval = json.optDouble(Keys.TimedResponseInterval, 0);
 
         // last modified
-        String interval = json.optString(Keys.LastModified);
-        if (!interval.isEmpty()) {
-            SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.US);
-            try {
-                mLastModified = dateFormat.parse(interval);
-            } catch (ParseException e) {
-                e.printStackTrace();
-                mLastModified = null;
-            }
-        }
+        mLastModified = parseDate(json.optString(Keys.LastModified));
 
         // outputs
         mOutputs = new ArrayList<>();
@@ -106,11 +95,29 @@ public class Response {
         }
     }
 
+    /**
+     * Parse an HTTP date, such as the value of last_modified.
+     * @return The Date, or null if the value is empty or malformed.
+     */
+    static Date parseDate(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return HttpDate.parse(value);
+        } catch (ParseException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * Get the Status object containing any errors returned by the Web API.
      * @return A Status object reflecting either success or failure of the last request.
      */
     public Status getStatus() {
+        checkNotRecycled();
         return mStatus;
     }
 
@@ -128,6 +135,7 @@ public class Response {
      * @return The current conversation id.
      */
     public String getConversationId() {
+        checkNotRecycled();
         return mConversationId;
     }
 
@@ -136,6 +144,7 @@ public class Response {
      * @return The current conversation state id.
      */
     public String getParticipantId() {
+        checkNotRecycled();
         return mParticipantId;
     }
 
@@ -144,6 +153,7 @@ public class Response {
      * @return A unique id.
      */
     public String getETag() {
+        checkNotRecycled();
         return mETag;
     }
 
@@ -152,6 +162,15 @@ public class Response {
      * @return An ArrayList of Output objects. Can be a mix of dialog and behaviors.
      */
     public ArrayList<Output> getOutputs() {
+        checkNotRecycled();
+        ResponseParser.Deferred deferred = mDeferred;
+        if (deferred != null) {
+            synchronized (this) {
+                if (mOutputs == null) {
+                    mOutputs = deferred.readOutputs();
+                }
+            }
+        }
         return mOutputs;
     }
 
@@ -160,6 +179,15 @@ public class Response {
      * @return An ArrayList of Entity objects. Can be a mix of subclasses.
      */
     public ArrayList<Entity> getEntities() {
+        checkNotRecycled();
+        ResponseParser.Deferred deferred = mDeferred;
+        if (deferred != null) {
+            synchronized (this) {
+                if (mEntities == null) {
+                    mEntities = deferred.readEntities();
+                }
+            }
+        }
         return mEntities;
     }
 
@@ -168,6 +196,7 @@ public class Response {
      * @return A Date representing when the content was last modified.
      */
     public Date getLastModified() {
+        checkNotRecycled();
         return mLastModified;
     }
 
@@ -178,6 +207,7 @@ public class Response {
      * @return The amount of time, in seconds, after which the next response will be available.
      */
     public double getTimedResponseInterval() {
+        checkNotRecycled();
         return mTimedResponseInterval;
     }
 
@@ -186,6 +216,7 @@ public class Response {
      * @return The Asr hypothesis or an empty String.
      */
     public String getAsrHypothesis() {
+        checkNotRecycled();
         return mAsrHypothesis;
     }
 
@@ -194,19 +225,129 @@ public class Response {
      * @return The current conversation endpoint.
      */
     public String getEndpoint() {
+        checkNotRecycled();
         return mEndpoint;
     }
 
+    void setConversationId(String conversationId) {
+        mConversationId = conversationId;
+    }
+
+    void setParticipantId(String participantId) {
+        mParticipantId = participantId;
+    }
+
+    void setETag(String eTag) {
+        mETag = eTag;
+    }
+
+    synchronized void setOutputs(ArrayList<Output> outputs) {
+        mOutputs = outputs;
+    }
+
+    synchronized void setEntities(ArrayList<Entity> entities) {
+        mEntities = entities;
+    }
+
+    /**
+     * Decode outputs and entities from the body the first time they are asked for.
+     */
+    synchronized void defer(ResponseParser.Deferred deferred) {
+        mDeferred = deferred;
+        mOutputs = null;
+        mEntities = null;
+    }
+
+    void setLastModified(Date lastModified) {
+        mLastModified = lastModified;
+    }
+
+    void setTimedResponseInterval(double timedResponseInterval) {
+        mTimedResponseInterval = timedResponseInterval;
+    }
+
+    void setAsrHypothesis(String asrHypothesis) {
+        mAsrHypothesis = asrHypothesis;
+    }
+
+    void setEndpoint(String endpoint) {
+        mEndpoint = endpoint;
+    }
+
+    /**
+     * Hand this Response, and the Outputs and Phonemes it holds, back to the SDK to be reused
+     * for a later response. Only has an effect on Responses delivered for a Request with
+     * setRecycleResponses(true). None of these objects, or the lists returned by getOutputs()
+     * and DialogOutput.getPhonemes(), may be used afterwards, so copy out anything that is
+     * still needed first. Entities and behavior parameters are not reused and stay valid.
+     * @throws IllegalStateException If the Response was already recycled.
+     */
+    public void recycle() {
+        if (mPooled) {
+            ResponsePool.recycle(this);
+        }
+    }
+
+    /**
+     * Turn use-after-recycle detection on or off, e.g. in debug builds. While it is on,
+     * recycled objects are never reused, and using one afterwards throws an
+     * IllegalStateException whose cause shows where recycle() was called. Off by default.
+     * @param debug true to detect use after recycle().
+     */
+    public static void setRecycleDebugging(boolean debug) {
+        ResponsePool.setDebug(debug);
+    }
+
+    /**
+     * Reset a pooled Response before the parser fills it in again.
+     */
+    synchronized void revive() {
+        mPooled = true;
+        mRecycled = false;
+        mRecycledAt = null;
+        mStatus.setSuccess(true);
+        mStatus.setStatusCode(200);
+        mStatus.setErrorMessage("");
+        mOutputs.clear();
+        mEntities = new ArrayList<>();
+        mLastModified = null;
+        mTimedResponseInterval = 0;
+    }
+
+    /**
+     * @throws IllegalStateException If the Response was already recycled.
+     */
+    synchronized void markRecycled(Throwable recycledAt) {
+        checkNotRecycled();
+        mRecycled = true;
+        mRecycledAt = recycledAt;
+    }
+
+    /**
+     * @return The outputs, which the caller takes over. The list itself stays with the Response.
+     */
+    synchronized ArrayList<Output> takeOutputs() {
+        ArrayList<Output> outputs = new ArrayList<>(mOutputs);
+        mOutputs.clear();
+        return outputs;
+    }
+
+    private void checkNotRecycled() {
+        ResponsePool.checkNotRecycled(mRecycled, mRecycledAt);
+    }
+
     private Status mStatus;
     private String mConversationId;
     private String mParticipantId;
     private String mETag;
     private ArrayList<Output> mOutputs;
     private ArrayList<Entity> mEntities;
+    private volatile ResponseParser.Deferred mDeferred;
     private Date mLastModified;
     private double mTimedResponseInterval;
     private String mAsrHypothesis;
     private String mEndpoint;
-
-    private static final String DATE_FORMAT = "EEE, dd MMM yyyy kk:mm:ss Z";
+    private boolean mPooled;
+    private volatile boolean mRecycled;
+    private Throwable mRecycledAt;
 }
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+/**
+ * Define the optional parts of a response that an app may choose not to receive. Parts that are
+ * left out of Request.setResponseFields() are skipped while parsing, without being decoded.
+ *
+ * <ul>
+ *     <li>ResponseField.PHONEMES: DialogOutput.getPhonemes() returns null</li>
+ *     <li>ResponseField.BEHAVIOR_PARAMETERS: BehaviorOutput.getParameters() returns null</li>
+ *     <li>ResponseField.ENTITIES: Response.getEntities() returns an empty list</li>
+ *     <li>ResponseField.MEDIA_URIS: DialogOutput.getAudioUri() and getVideoUri() return empty Strings</li>
+ *     <li>ResponseField.USER_DATA: DialogOutput.getUserData() returns an empty String</li>
+ * </ul>
+ */
+public enum ResponseField {
+    PHONEMES,
+    BEHAVIOR_PARAMETERS,
+    ENTITIES,
+    MEDIA_URIS,
+    USER_DATA
+}
@@ -0,0 +1,662 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Build a Response from a JSON body with a pull parser, without first decoding the body to a
+ * String or building a JSONObject tree. The result is the same as Response(JSONObject) would
+ * produce from the same body. The I/O thread reads the whole body into memory, so that parsing
+ * can happen on the parse pool (see ReceivedResponse).
+ * <p>
+ * In lazy mode the body is kept after parsing, and only the top-level fields are parsed right
+ * away. Outputs, entities and phonemes are decoded when first asked for, so a listener
+ * that only looks at, say, the ASR hypothesis never pays for building them. The body is let go
+ * once all of them have been decoded.
+ * </p><p>
+ * Parts of the response left out of the parser's ResponseFields are skipped in either mode.
+ * Names that repeat from response to response are interned in the project's SymbolTable.
+ * </p>
+ */
+class ResponseParser {
+    /**
+     * Create a parser that builds the whole Response up front.
+     */
+    ResponseParser() {
+        this(false, EnumSet.allOf(ResponseField.class), null);
+    }
+
+    /**
+     * @param lazy If true, only the top-level fields are parsed up front. The body is kept, and
+     *             outputs, entities and phonemes are decoded from it the first time they are
+     *             asked for.
+     * @param fields The optional parts of the response to decode. Everything else is skipped.
+     * @param symbols The table to intern names with, or null to leave them as they are.
+     */
+    ResponseParser(boolean lazy, Set<ResponseField> fields, SymbolTable symbols) {
+        mLazy = lazy;
+        mSymbols = symbols;
+        mPhonemes = fields.contains(ResponseField.PHONEMES);
+        mParameters = fields.contains(ResponseField.BEHAVIOR_PARAMETERS);
+        mEntities = fields.contains(ResponseField.ENTITIES);
+        mMediaUris = fields.contains(ResponseField.MEDIA_URIS);
+        mUserData = fields.contains(ResponseField.USER_DATA);
+    }
+
+    /**
+     * Build Responses from objects that were handed back with Response.recycle(), instead of
+     * allocating new ones. Ignored by lazy parsers, whose outputs are decoded after delivery.
+     */
+    void setPooled(boolean pooled) {
+        mPooled = pooled && !mLazy;
+    }
+
+    /**
+     * Parse a UTF-8 response body that has been read into memory.
+     * @param endpoint The value of the Location header, if any. Overrides any endpoint in the body.
+     */
+    Response parse(byte[] body, String endpoint) throws IOException {
+        Deferred deferred = mLazy ? new Deferred(body) : null;
+        return parse(new InputStreamReader(new ByteArrayInputStream(body), HttpClient.ENCODING), endpoint, deferred);
+    }
+
+    private Response parse(Reader body, String endpoint, Deferred deferred) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        Response response = readResponse(reader, deferred);
+        if (endpoint != null) {
+            response.setEndpoint(endpoint);
+        }
+        return response;
+    }
+
+    /**
+     * @param deferred Where to decode outputs and entities from later, or null to decode them now.
+     */
+    private Response readResponse(JsonReader reader, Deferred deferred) throws IOException {
+        Response response;
+        if (mPooled) {
+            response = ResponsePool.obtainResponse();
+        } else if (deferred != null) {
+            response = new Response();
+            response.setStatus(new Status());
+            response.defer(deferred);
+        } else {
+            response = new Response();
+            response.setStatus(new Status());
+            response.setOutputs(new ArrayList<Output>());
+            response.setEntities(new ArrayList<Entity>());
+        }
+        response.setConversationId("");
+        response.setParticipantId("");
+        response.setETag("");
+        response.setAsrHypothesis("");
+        response.setEndpoint("");
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case Keys.Error:
+                    readError(reader, response);
+                    break;
+                case Keys.ConversationId:
+                    response.setConversationId(readString(reader));
+                    break;
+                case Keys.ParticipantId:
+                    response.setParticipantId(readString(reader));
+                    break;
+                case Keys.ETag:
+                    response.setETag(readString(reader));
+                    break;
+                case Keys.AsrHypothesis:
+                    response.setAsrHypothesis(readString(reader));
+                    break;
+                case Keys.EndpointHeader:
+                    response.setEndpoint(readString(reader));
+                    break;
+                case Keys.TimedResponseInterval:
+                    response.setTimedResponseInterval(readDouble(reader, 0));
+                    break;
+                case Keys.LastModified:
+                    response.setLastModified(Response.parseDate(readString(reader)));
+                    break;
+                case Keys.Outputs:
+                    if (deferred != null) {
+                        reader.skipValue();
+                    } else {
+                        readOutputs(reader, response.getOutputs(), null);
+                    }
+                    break;
+                case Keys.Entities:
+                    if (deferred != null || !mEntities) {
+                        reader.skipValue();
+                    } else {
+                        readEntities(reader, response.getEntities());
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return response;
+    }
+
+    private void readError(JsonReader reader, Response response) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        String message = "Unknown Error";
+        int statusCode = 500;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(Keys.Message)) {
+                message = readString(reader);
+            } else if (name.equals(Keys.Status)) {
+                statusCode = (int) readDouble(reader, 500);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        Status status = response.getStatus();
+        status.setSuccess(false);
+        status.setErrorMessage(message);
+        status.setStatusCode(statusCode);
+    }
+
+    /**
+     * @param deferred Where to decode phonemes from later, or null to decode them now.
+     */
+    private void readOutputs(JsonReader reader, ArrayList<Output> outputs, Deferred deferred) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+
+        reader.beginArray();
+        for (int index = 0; reader.hasNext(); index++) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            Output output = readOutput(reader, index, deferred);
+            if (output != null) {
+                outputs.add(output);
+            }
+        }
+        reader.endArray();
+    }
+
+    /**
+     * The type of an output may come after the fields that depend on it, so collect every field
+     * either kind of output could have and decide at the end.
+     */
+    private Output readOutput(JsonReader reader, int index, Deferred deferred) throws IOException {
+        String type = null;
+        String guid = "";
+        String text = "";
+        String audioUri = "";
+        String videoUri = "";
+        String character = "";
+        String userData = "";
+        String behavior = "";
+        double duration = 0;
+        ArrayList<Phoneme> phonemes = null;
+        boolean hasPhonemes = false;
+        HashMap<String, ParameterValue> parameters = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case Keys.OutputType:
+                    type = readString(reader);
+                    break;
+                case Keys.Guid:
+                    guid = readString(reader);
+                    break;
+                case Keys.Text:
+                    text = readString(reader);
+                    break;
+                case Keys.Uri:
+                    audioUri = mMediaUris ? readString(reader) : skip(reader);
+                    break;
+                case Keys.VideoFile:
+                    videoUri = mMediaUris ? readString(reader) : skip(reader);
+                    break;
+                case Keys.Character:
+                    character = symbol(readString(reader));
+                    break;
+                case Keys.UserData:
+                    userData = mUserData ? readString(reader) : skip(reader);
+                    break;
+                case Keys.Duration:
+                    duration = readDouble(reader, 0);
+                    break;
+                case Keys.Phonemes:
+                    if (!mPhonemes) {
+                        reader.skipValue();
+                    } else if (deferred != null) {
+                        hasPhonemes = reader.peek() == JsonToken.BEGIN_ARRAY;
+                        reader.skipValue();
+                    } else {
+                        phonemes = readPhonemes(reader);
+                    }
+                    break;
+                case Keys.Behavior:
+                    behavior = symbol(readString(reader));
+                    break;
+                case Keys.Parameters:
+                    if (mParameters) {
+                        parameters = readParameters(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (OutputType.DIALOG.toString().equals(type)) {
+            DialogOutput dialog = mPooled ? ResponsePool.obtainDialog() : new DialogOutput();
+            dialog.mGuid = guid;
+            dialog.setText(text);
+            dialog.setAudioUri(audioUri);
+            dialog.setVideoUri(videoUri);
+            dialog.setCharacter(character);
+            dialog.setDuration(duration);
+            dialog.setUserData(userData);
+            if (hasPhonemes) {
+                dialog.deferPhonemes(deferred, index);
+            } else {
+                dialog.setPhonemes(phonemes);
+            }
+            return dialog;
+        } else if (OutputType.BEHAVIOR.toString().equals(type)) {
+            BehaviorOutput behaviorOutput = mPooled ? ResponsePool.obtainBehavior() : new BehaviorOutput();
+            behaviorOutput.mGuid = guid;
+            behaviorOutput.setBehavior(behavior);
+            behaviorOutput.setParameters(parameters);
+            return behaviorOutput;
+        }
+
+        if (mPooled && phonemes != null) {
+            ResponsePool.recyclePhonemes(phonemes);
+        }
+        return null;
+    }
+
+    /**
+     * @return The phonemes, or null if there are none.
+     */
+    private ArrayList<Phoneme> readPhonemes(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+
+        ArrayList<Phoneme> phonemes = mPooled ? ResponsePool.obtainPhonemeList() : new ArrayList<Phoneme>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            String name = null;
+            double secondsSinceStart = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (key.equals(Keys.Name)) {
+                    name = symbol(readString(reader));
+                } else if (key.equals(Keys.SecondsSinceStart)) {
+                    secondsSinceStart = readDouble(reader, 0);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            phonemes.add(mPooled ? ResponsePool.obtainPhoneme(name, secondsSinceStart)
+                    : new Phoneme(name, secondsSinceStart));
+        }
+        reader.endArray();
+
+        if (phonemes.isEmpty()) {
+            if (mPooled) {
+                ResponsePool.recyclePhonemes(phonemes);
+            }
+            return null;
+        }
+        return phonemes;
+    }
+
+    /**
+     * @return The parameters, or null if there are none.
+     */
+    private HashMap<String, ParameterValue> readParameters(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        HashMap<String, ParameterValue> parameters = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = symbol(reader.nextName());
+            parameters.put(key, new ParameterValue(readValue(reader)));
+        }
+        reader.endObject();
+
+        return parameters.isEmpty() ? null : parameters;
+    }
+
+    /**
+     * Entities arrive as a dictionary and are flattened into a list, keeping their order.
+     */
+    private void readEntities(JsonReader reader, ArrayList<Entity> entities) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = symbol(reader.nextName());
+            switch (reader.peek()) {
+                case STRING:
+                    entities.add(new Label(key, reader.nextString()));
+                    break;
+                case NUMBER:
+                    entities.add(new Counter(key, reader.nextDouble()));
+                    break;
+                case BOOLEAN:
+                    entities.add(new Flag(key, reader.nextBoolean()));
+                    break;
+                case BEGIN_ARRAY:
+                    ArrayList<Object> list = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        list.add(readValue(reader));
+                    }
+                    reader.endArray();
+                    entities.add(new List(key, list));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read any value into the same types JSONObject.opt() would return, so that code written
+     * against those types (e.g. ParameterValue) sees no difference.
+     */
+    private Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return toNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = symbol(reader.nextName());
+                    try {
+                        object.put(key, readValue(reader));
+                    } catch (JSONException e) {
+                        // only thrown for NaN or infinite numbers, which JSON can't express
+                    }
+                }
+                reader.endObject();
+                return object;
+            default:
+                reader.skipValue();
+                return JSONObject.NULL;
+        }
+    }
+
+    /**
+     * Read a value the way JSONObject.optString() does: numbers and booleans are converted to
+     * text, anything else becomes an empty String.
+     */
+    private static String readString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return Boolean.toString(reader.nextBoolean());
+            default:
+                reader.skipValue();
+                return "";
+        }
+    }
+
+    /**
+     * Swap a name for its canonical instance, if names are being interned.
+     */
+    private String symbol(String name) {
+        return mSymbols != null ? mSymbols.intern(name) : name;
+    }
+
+    /**
+     * Skip a value that was not asked for.
+     * @return An empty String, the same as if the value were missing.
+     */
+    private static String skip(JsonReader reader) throws IOException {
+        reader.skipValue();
+        return "";
+    }
+
+    /**
+     * Read a value the way JSONObject.optDouble() does, accepting numbers and numeric strings.
+     */
+    private static double readDouble(JsonReader reader, double fallback) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            reader.skipValue();
+            return fallback;
+        }
+
+        try {
+            return reader.nextDouble();
+        } catch (NumberFormatException e) {
+            // nextDouble() leaves a non-numeric string unconsumed
+            reader.skipValue();
+            return fallback;
+        }
+    }
+
+    /**
+     * Narrow a number literal to Integer, Long or Double, as the org.json tokenizer does.
+     */
+    private static Object toNumber(String literal) {
+        if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+            try {
+                long value = Long.parseLong(literal);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            } catch (NumberFormatException e) {
+                // too big for a long, fall through
+            }
+        }
+        return Double.valueOf(literal);
+    }
+
+    /**
+     * A response body kept around so parts of it can be decoded when they are first used. Each
+     * part is found by skipping over everything before it, which is far cheaper than building
+     * objects for it. The parts are the outputs, the entities, and the phonemes of each dialog
+     * among the outputs. Once every part has been decoded or dropped, the body is let go.
+     */
+    class Deferred {
+        Deferred(byte[] body) {
+            mBody = body;
+        }
+
+        synchronized ArrayList<Output> readOutputs() {
+            ArrayList<Output> outputs = new ArrayList<>();
+            try {
+                JsonReader reader = open();
+                if (seek(reader, Keys.Outputs)) {
+                    ResponseParser.this.readOutputs(reader, outputs, this);
+                }
+            } catch (IOException | RuntimeException e) {
+                // the body was already read through once, so this can't really happen
+                e.printStackTrace();
+            } finally {
+                dropPart();
+            }
+            return outputs;
+        }
+
+        synchronized ArrayList<Entity> readEntities() {
+            ArrayList<Entity> entities = new ArrayList<>();
+            try {
+                if (mEntities) {
+                    JsonReader reader = open();
+                    if (seek(reader, Keys.Entities)) {
+                        ResponseParser.this.readEntities(reader, entities);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                dropPart();
+            }
+            return entities;
+        }
+
+        /**
+         * @param index The position of the dialog in the outputs array.
+         */
+        synchronized ArrayList<Phoneme> readPhonemes(int index) {
+            try {
+                JsonReader reader = open();
+                if (!seek(reader, Keys.Outputs)) {
+                    return null;
+                }
+
+                reader.beginArray();
+                for (int i = 0; i < index; i++) {
+                    reader.skipValue();
+                }
+
+                reader.beginObject();
+                if (seekInObject(reader, Keys.Phonemes)) {
+                    return ResponseParser.this.readPhonemes(reader);
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                dropPart();
+            }
+            return null;
+        }
+
+        /**
+         * Count a dialog whose phonemes are left in the body, to be read with readPhonemes() or
+         * given up with dropPart().
+         */
+        synchronized void addPart() {
+            mParts++;
+        }
+
+        /**
+         * Mark a part as no longer needed, letting go of the body once no part is left.
+         */
+        synchronized void dropPart() {
+            if (--mParts == 0) {
+                mBody = null;
+            }
+        }
+
+        private JsonReader open() throws IOException {
+            if (mBody == null) {
+                throw new IOException("Response body already released");
+            }
+            return new JsonReader(new InputStreamReader(new ByteArrayInputStream(mBody), HttpClient.ENCODING));
+        }
+
+        /**
+         * Move to the value of a top-level key.
+         * @return false if the key isn't there.
+         */
+        private boolean seek(JsonReader reader, String key) throws IOException {
+            reader.beginObject();
+            return seekInObject(reader, key);
+        }
+
+        private boolean seekInObject(JsonReader reader, String key) throws IOException {
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(key)) {
+                    return true;
+                }
+                reader.skipValue();
+            }
+            return false;
+        }
+
+        private byte[] mBody;
+        // the outputs and the entities, until the outputs are read and add their phonemes
+        private int mParts = 2;
+    }
+
+    private final boolean mLazy;
+    private boolean mPooled;
+    private final SymbolTable mSymbols;
+    private final boolean mPhonemes;
+    private final boolean mParameters;
+    private final boolean mEntities;
+    private final boolean mMediaUris;
+    private final boolean mUserData;
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Keep Responses, Outputs and Phonemes that the app has recycled, so that the parser can reuse
+ * them instead of allocating new ones for every turn. Each pool is bounded, and anything beyond
+ * that is left to the garbage collector.
+ * <p>
+ * In debug mode recycled objects are never reused. They stay marked as recycled, so any later
+ * use of one fails with an IllegalStateException that points back to where it was recycled.
+ * </p>
+ */
+class ResponsePool {
+    static Response obtainResponse() {
+        Response response;
+        synchronized (sResponses) {
+            response = sResponses.poll();
+        }
+        if (response == null) {
+            response = new Response();
+            response.setStatus(new Status());
+            response.setOutputs(new ArrayList<Output>());
+            response.setEntities(new ArrayList<Entity>());
+        }
+        response.revive();
+        return response;
+    }
+
+    static DialogOutput obtainDialog() {
+        DialogOutput dialog;
+        synchronized (sDialogs) {
+            dialog = sDialogs.poll();
+        }
+        if (dialog == null) {
+            dialog = new DialogOutput();
+        }
+        dialog.revive();
+        return dialog;
+    }
+
+    static BehaviorOutput obtainBehavior() {
+        BehaviorOutput behavior;
+        synchronized (sBehaviors) {
+            behavior = sBehaviors.poll();
+        }
+        if (behavior == null) {
+            behavior = new BehaviorOutput();
+        }
+        behavior.revive();
+        return behavior;
+    }
+
+    static ArrayList<Phoneme> obtainPhonemeList() {
+        synchronized (sPhonemeLists) {
+            ArrayList<Phoneme> list = sPhonemeLists.poll();
+            return list != null ? list : new ArrayList<Phoneme>();
+        }
+    }
+
+    static Phoneme obtainPhoneme(String name, double secondsSinceStart) {
+        Phoneme phoneme;
+        synchronized (sPhonemes) {
+            phoneme = sPhonemes.poll();
+        }
+        if (phoneme == null) {
+            return new Phoneme(name, secondsSinceStart);
+        }
+        phoneme.revive(name, secondsSinceStart);
+        return phoneme;
+    }
+
+    /**
+     * Take back a Response along with everything it holds.
+     * @throws IllegalStateException If it was already recycled.
+     */
+    static void recycle(Response response) {
+        response.markRecycled(recycledAt());
+
+        for (Output output : response.takeOutputs()) {
+            if (output instanceof DialogOutput) {
+                recycle((DialogOutput) output);
+            } else if (output instanceof BehaviorOutput) {
+                recycle((BehaviorOutput) output);
+            }
+        }
+
+        if (!sDebug) {
+            synchronized (sResponses) {
+                if (sResponses.size() < MAX_RESPONSES) {
+                    sResponses.push(response);
+                }
+            }
+        }
+    }
+
+    /**
+     * Take back a list of phonemes that ended up not being used.
+     */
+    static void recyclePhonemes(ArrayList<Phoneme> phonemes) {
+        Throwable recycledAt = recycledAt();
+        for (Phoneme phoneme : phonemes) {
+            phoneme.markRecycled(recycledAt);
+            if (!sDebug) {
+                synchronized (sPhonemes) {
+                    if (sPhonemes.size() < MAX_PHONEMES) {
+                        sPhonemes.push(phoneme);
+                    }
+                }
+            }
+        }
+
+        phonemes.clear();
+        if (!sDebug) {
+            synchronized (sPhonemeLists) {
+                if (sPhonemeLists.size() < MAX_OUTPUTS) {
+                    sPhonemeLists.push(phonemes);
+                }
+            }
+        }
+    }
+
+    private static void recycle(DialogOutput dialog) {
+        ArrayList<Phoneme> phonemes = dialog.markRecycled(recycledAt());
+        if (phonemes != null) {
+            recyclePhonemes(phonemes);
+        }
+
+        if (!sDebug) {
+            synchronized (sDialogs) {
+                if (sDialogs.size() < MAX_OUTPUTS) {
+                    sDialogs.push(dialog);
+                }
+            }
+        }
+    }
+
+    private static void recycle(BehaviorOutput behavior) {
+        behavior.markRecycled(recycledAt());
+
+        if (!sDebug) {
+            synchronized (sBehaviors) {
+                if (sBehaviors.size() < MAX_OUTPUTS) {
+                    sBehaviors.push(behavior);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remember where an object was recycled, but only in debug mode since it's expensive.
+     */
+    private static Throwable recycledAt() {
+        return sDebug ? new Throwable("Recycled here") : null;
+    }
+
+    /**
+     * Turn debug mode on or off. Objects recycled while it is on are never reused.
+     */
+    static void setDebug(boolean debug) {
+        sDebug = debug;
+    }
+
+    /**
+     * Fail if an object is used after it was recycled.
+     */
+    static void checkNotRecycled(boolean recycled, Throwable recycledAt) {
+        if (recycled) {
+            throw new IllegalStateException("Used after recycle()", recycledAt);
+        }
+    }
+
+    private static volatile boolean sDebug;
+
+    private static final int MAX_RESPONSES = 8;
+    private static final int MAX_OUTPUTS = 64;
+    private static final int MAX_PHONEMES = 2048;
+
+    private static final ArrayDeque<Response> sResponses = new ArrayDeque<>();
+    private static final ArrayDeque<DialogOutput> sDialogs = new ArrayDeque<>();
+    private static final ArrayDeque<BehaviorOutput> sBehaviors = new ArrayDeque<>();
+    private static final ArrayDeque<ArrayList<Phoneme>> sPhonemeLists = new ArrayDeque<>();
+    private static final ArrayDeque<Phoneme> sPhonemes = new ArrayDeque<>();
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * Describe how a Transport retries and hedges requests that are safe to repeat, such as
+ * Conversation.getEntities(). Requests that change conversation state are never retried or
+ * hedged, so input is never applied twice.
+ * </p><p>
+ * A request is retried when it fails before the Web API answers (e.g. the connection dropped)
+ * or the Web API answers with 502, 503 or 504. Retries wait an exponentially growing, randomly
+ * jittered delay and never run past the request's deadline.
+ * </p><p>
+ * Hedging sends a second copy of a request that is taking longer than most recent requests
+ * did, and uses whichever copy answers first. It is off by default.
+ * </p><p>
+ * Example:
+ * </p><pre><code>
+ * RetryPolicy policy = new RetryPolicy();
+ * policy.setMaxAttempts(4);
+ * policy.setHedgePercentile(0.95);  // hedge requests slower than the 95th percentile
+ * transport.setRetryPolicy(policy);
+ * </code></pre>
+ */
+public class RetryPolicy {
+    /**
+     * Create a policy with the default settings: up to 3 attempts, backing off from 250 ms up
+     * to 4 seconds, without hedging.
+     */
+    public RetryPolicy() {
+    }
+
+    /**
+     * Create a policy that never retries or hedges.
+     * @return A new RetryPolicy.
+     */
+    public static RetryPolicy none() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(1);
+        return policy;
+    }
+
+    /**
+     * Get the maximum number of times a request is sent, including the first attempt.
+     * @return The maximum number of attempts.
+     */
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * Set the maximum number of times a request is sent, including the first attempt. 1 turns
+     * retries off.
+     * @param maxAttempts The maximum number of attempts.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+        }
+        mMaxAttempts = maxAttempts;
+    }
+
+    /**
+     * Get the longest the first retry waits.
+     * @return The initial backoff, in milliseconds.
+     */
+    public long getInitialBackoff() {
+        return mInitialBackoff;
+    }
+
+    /**
+     * Set the longest the first retry waits. Each later retry may wait twice as long as the
+     * one before it (see setBackoffMultiplier()).
+     * @param initialBackoff The initial backoff, in milliseconds.
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        if (initialBackoff < 0) {
+            throw new IllegalArgumentException("initialBackoff < 0: " + initialBackoff);
+        }
+        mInitialBackoff = initialBackoff;
+    }
+
+    /**
+     * Get the longest any retry waits.
+     * @return The maximum backoff, in milliseconds.
+     */
+    public long getMaxBackoff() {
+        return mMaxBackoff;
+    }
+
+    /**
+     * Set the longest any retry waits.
+     * @param maxBackoff The maximum backoff, in milliseconds.
+     */
+    public void setMaxBackoff(long maxBackoff) {
+        if (maxBackoff < 0) {
+            throw new IllegalArgumentException("maxBackoff < 0: " + maxBackoff);
+        }
+        mMaxBackoff = maxBackoff;
+    }
+
+    /**
+     * Get how much the backoff grows with each retry.
+     * @return The backoff multiplier.
+     */
+    public double getBackoffMultiplier() {
+        return mBackoffMultiplier;
+    }
+
+    /**
+     * Set how much the backoff grows with each retry. The default is 2.
+     * @param backoffMultiplier The backoff multiplier, at least 1.
+     */
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        if (backoffMultiplier < 1) {
+            throw new IllegalArgumentException("backoffMultiplier < 1: " + backoffMultiplier);
+        }
+        mBackoffMultiplier = backoffMultiplier;
+    }
+
+    /**
+     * Get the latency percentile after which a hedged copy of a request is sent.
+     * @return The percentile between 0 and 1, or 0 if hedging is off.
+     */
+    public double getHedgePercentile() {
+        return mHedgePercentile;
+    }
+
+    /**
+     * Send a second copy of a request that has not been answered within the given percentile
+     * of recent request latencies, e.g. 0.95. Hedging only starts once enough requests have
+     * completed to estimate the percentile.
+     * @param hedgePercentile The percentile between 0 and 1, or 0 to turn hedging off.
+     */
+    public void setHedgePercentile(double hedgePercentile) {
+        if (hedgePercentile < 0 || hedgePercentile >= 1) {
+            throw new IllegalArgumentException("hedgePercentile must be in [0, 1): " + hedgePercentile);
+        }
+        mHedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * Get the shortest time to wait before sending a hedged copy of a request.
+     * @return The minimum hedge delay, in milliseconds.
+     */
+    public long getMinHedgeDelay() {
+        return mMinHedgeDelay;
+    }
+
+    /**
+     * Set the shortest time to wait before sending a hedged copy of a request, so that fast
+     * requests are never doubled up. The default is 50 ms.
+     * @param minHedgeDelay The minimum hedge delay, in milliseconds.
+     */
+    public void setMinHedgeDelay(long minHedgeDelay) {
+        if (minHedgeDelay < 0) {
+            throw new IllegalArgumentException("minHedgeDelay < 0: " + minHedgeDelay);
+        }
+        mMinHedgeDelay = minHedgeDelay;
+    }
+
+    /**
+     * Pick how long to wait before a retry, with "full jitter": a random delay between 0 and
+     * the exponential backoff for this retry.
+     * @param retry 1 for the first retry, 2 for the second, and so on.
+     */
+    long getBackoff(int retry, Random random) {
+        double ceiling = mInitialBackoff * Math.pow(mBackoffMultiplier, retry - 1);
+        long limit = (long) Math.min(mMaxBackoff, ceiling);
+        if (limit <= 0) {
+            return 0;
+        }
+        return (long) (random.nextDouble() * limit);
+    }
+
+    private int mMaxAttempts = 3;
+    private long mInitialBackoff = 250;
+    private long mMaxBackoff = 4000;
+    private double mBackoffMultiplier = 2;
+    private double mHedgePercentile;
+    private long mMinHedgeDelay = 50;
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Create the thread pools owned by the SDK, so our work never queues behind other libraries'
+ * AsyncTasks (or theirs behind ours).
+ */
+class SdkExecutors {
+    /**
+     * Create a fixed-size pool whose threads are named after it and exit when idle.
+     * @param name Prefix for thread names, e.g. "PullString-request".
+     * @param threads The maximum number of threads.
+     */
+    static ThreadPoolExecutor newPool(String name, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1: " + threads);
+        }
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), newThreadFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Create a pool that never queues: a task either starts on a thread right away or is
+     * rejected with a RejectedExecutionException.
+     * @param name Prefix for thread names, e.g. "PullString-hedge".
+     * @param threads The maximum number of threads.
+     */
+    static ThreadPoolExecutor newDirectPool(String name, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads < 1: " + threads);
+        }
+
+        return new ThreadPoolExecutor(0, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), newThreadFactory(name));
+    }
+
+    /**
+     * Get the single shared thread that enforces request deadlines and aborts connections.
+     */
+    static synchronized ScheduledExecutorService watchdog() {
+        if (sWatchdog == null) {
+            sWatchdog = new ScheduledThreadPoolExecutor(1, newThreadFactory(WATCHDOG_THREAD_NAME));
+        }
+        return sWatchdog;
+    }
+
+    /**
+     * Get the shared pool that response bodies are parsed on, with one thread per core. It is
+     * kept apart from the request pools so that parsing never holds up network I/O.
+     */
+    static synchronized Executor parser() {
+        if (sParser == null) {
+            sParser = newPool(PARSE_THREAD_NAME, Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+        return sParser;
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+            private final AtomicInteger mCount = new AtomicInteger();
+        };
+    }
+
+    private static ScheduledExecutorService sWatchdog;
+    private static Executor sParser;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final String WATCHDOG_THREAD_NAME = "PullString-watchdog";
+    private static final String PARSE_THREAD_NAME = "PullString-parse";
+}
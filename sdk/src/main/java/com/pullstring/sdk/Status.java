@@ -52,6 +52,8 @@ public class Status {
      *     <li>Encoding Error: -1</li>
      *     <li>Parsing Error: -2</li>
      *     <li>Malformed Request: -3</li>
+     *     <li>Timed Out: -4</li>
+     *     <li>Cancelled: -5</li>
      * </ul>
      */
     public int getStatusCode() {
@@ -77,13 +79,17 @@ public class Status {
      *     <li>InternalError.ENCODING = -1</li>
      *     <li>InternalError.PARSING = -2</li>
      *     <li>InternalError.BAD_REQUEST = -3</li>
+     *     <li>InternalError.TIMEOUT = -4</li>
+     *     <li>InternalError.CANCELLED = -5</li>
      *
      * </ul>
      */
     public enum InternalError {
         ENCODING(-1),
         PARSING(-2),
-        BAD_REQUEST(-3);
+        BAD_REQUEST(-3),
+        TIMEOUT(-4),
+        CANCELLED(-5);
 
         private final int mCode;
         InternalError(int code) { mCode = code; }
@@ -11,68 +11,171 @@ import android.os.AsyncTask;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.URL;
 import java.util.Map;
 
 import javax.net.ssl.HttpsURLConnection;
 
 /**
- * <!-- Add a javadoc description here -->
+ * A single chunked upload to the Web API, such as streaming audio. A new StreamingClient is used
+ * for each stream.
  */
 class StreamingClient extends HttpClient {
     StreamingClient(String baseUrl, ResponseListener listener) {
-        super(baseUrl, listener);
+        super(baseUrl);
+        mListener = listener;
     }
 
     /**
-     * Connect to the Web API asynchronously and pass the OutputStream to the listener
+     * Connect to the Web API asynchronously and pass an UploadStream to the listener
+     * @return A handle to cancel the stream with
      */
-    void open(String endpoint, Map<String,String> headers, OpenStreamListener listener) {
+    RequestHandle open(final ApiRequest request, OpenStreamListener listener) {
         mOpenListener = listener;
-        ApiRequest request = new ApiRequest(endpoint, headers);
+        mCall = newCall(request);
+
+        final ConnectionPermits permits = getConnectionPermits();
+        if (permits == null) {
+            openAsync(request);
+        } else {
+            // wait for a slot without tying up a stream thread, which the stream that frees the
+            // slot may need to close. The slot is then held until this stream is closed.
+            permits.acquireAsync(mCall, getConnectTimeout(), new ConnectionPermits.Waiter() {
+                @Override
+                void onAcquired() {
+                    mPermits = permits;
+                    openAsync(request);
+                }
+
+                @Override
+                void onAbandoned() {
+                    synchronized (StreamingClient.this) {
+                        mState = STATE_CLOSING;
+                    }
+
+                    Response response = mCall.getInterruptedResponse();
+                    mCall.finish();
+                    if (response == null) {
+                        response = getErrorResponse(Status.InternalError.TIMEOUT.getValue(),
+                                "Timed out waiting for a free connection");
+                    }
+                    new ReceivedResponse(response).deliver(mListener);
+                }
+            });
+        }
+
+        return new RequestHandle() {
+            @Override
+            public void cancel() {
+                mCall.cancel();
+
+                boolean close;
+                synchronized (StreamingClient.this) {
+                    close = mState == STATE_OPEN;
+                    if (close) {
+                        mState = STATE_CLOSING;
+                    }
+                }
+
+                // an open stream only completes once it is closed
+                if (close) {
+                    closeAsync();
+                }
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return mCall.isCancelled();
+            }
+        };
+    }
+
+    /**
+     * Connect on the stream executor and hand the stream to the open listener on the main thread
+     */
+    private void openAsync(ApiRequest request) {
         new StreamRequestTask() {
             @Override
             protected Response run(ApiRequest request) {
-                return openSync(request.endpoint, request.headers);
+                return openSync(request);
             }
-        }.execute(request);
+
+            @Override
+            protected void onPostExecute(Response response) {
+                if (response != null) {
+                    super.onPostExecute(response);
+                    return;
+                }
+
+                boolean cancelled;
+                synchronized (StreamingClient.this) {
+                    cancelled = mCall.isCancelled();
+                    mState = cancelled ? STATE_CLOSING : STATE_OPEN;
+                }
+
+                if (cancelled) {
+                    // cancelled while connecting, so finish up without handing out the stream
+                    closeAsync();
+                } else if (mOpenListener != null) {
+                    mOpenListener.onOpen(new Upload());
+                }
+            }
+        }.executeOnExecutor(mExecutor, request);
     }
 
     /**
-     * Asynchronously close the connection to the Web API.
+     * Asynchronously close the connection to the Web API, unless it is already closing.
      */
     void close() {
-        new StreamRequestTask() {
+        synchronized (this) {
+            if (mState != STATE_OPEN) {
+                return;
+            }
+            mState = STATE_CLOSING;
+        }
+
+        closeAsync();
+    }
+
+    private void closeAsync() {
+        mExecutor.execute(new Runnable() {
             @Override
-            protected Response run(ApiRequest request) {
-                return closeSync();
+            public void run() {
+                // the result is parsed on the parse pool, freeing this thread for other streams
+                closeSync().deliver(mListener);
             }
-        }.execute();
+        });
     }
 
     /**
      * Open connection with the Web API.
      * @return null on success or a Response object with Status set to failure.
      */
-    private Response openSync(String endpoint, Map<String,String> headers) {
-        String urlString = getUrl(endpoint, null);
+    private Response openSync(ApiRequest request) {
+        String urlString = getUrl(request);
+        mParser = request.getParser();
         String errString = null;
 
         try {
             // open the connection
-            URL url = new URL(urlString);
-            mConnection = (HttpsURLConnection) url.openConnection();
+            mConnection = openConnection(urlString);
+            mCall.setConnection(mConnection);
+            applyTimeouts(mConnection, mCall);
 
             // set headers
-            for (Map.Entry<String, String> kv : headers.entrySet()) {
+            for (Map.Entry<String, String> kv : request.getHeaders().entrySet()) {
                 mConnection.setRequestProperty(kv.getKey(), kv.getValue());
             }
+            acceptCompressed(mConnection);
 
             // configure the connection for chunked streaming
             mConnection.setDoOutput(true);
             mConnection.setRequestMethod(REQUEST_METHOD);
             mConnection.setChunkedStreamingMode(0);
             mOutputStream = new BufferedOutputStream(mConnection.getOutputStream());
+
+            if (mCall.isInterrupted()) {
+                errString = "Stream interrupted";
+            }
         } catch (IOException e) {
             if (mConnection != null) {
                 try {
@@ -98,7 +201,18 @@ class StreamingClient extends HttpClient {
                 mOutputStream = null;
             }
 
-            mConnection.disconnect();
+            if (mConnection != null) {
+                mConnection.disconnect();
+            }
+
+            releasePermit(mPermits);
+            mPermits = null;
+            mCall.finish();
+
+            Response interrupted = mCall.getInterruptedResponse();
+            if (interrupted != null) {
+                return interrupted;
+            }
 
             return getErrorResponse(Status.InternalError.BAD_REQUEST.getValue(), errString);
         }
@@ -108,15 +222,19 @@ class StreamingClient extends HttpClient {
     }
 
     /**
-     * Close the connection to the Web API.
-     * @return A Response object. If there were errors, the object's Status property will contain
-     * the error message and status code.
+     * Close the connection to the Web API and read the result.
+     * @return The unparsed result. If there were errors, the Response's Status property will
+     * contain the error message and status code.
      */
-    private Response closeSync() {
+    private ReceivedResponse closeSync() {
         int statusCode = DEFAULT_SUCCESS_CODE;
-        Response response = null;
+        ReceivedResponse response = null;
         String errString = null;
 
+        // the deadline covers finishing the upload and waiting for the result
+        mCall.startDeadline();
+        applyTimeouts(mConnection, mCall);
+
         try {
             // close the stream and disconnect the listener
             if (mOutputStream != null) {
@@ -125,8 +243,8 @@ class StreamingClient extends HttpClient {
             }
             mOpenListener = null;
 
-            // use the superclass' parse method
-            response = parse(mConnection);
+            // use the superclass' receive method
+            response = receive(mConnection, mParser);
         } catch (IOException e) {
             if (mConnection != null) {
                 try {
@@ -140,12 +258,17 @@ class StreamingClient extends HttpClient {
             errString = e.getLocalizedMessage();
             statusCode = DEFAULT_ERROR_CODE;
         } finally {
-            if (mConnection != null) {
-                mConnection.disconnect();
-            }
+            Response interrupted = mCall.getInterruptedResponse();
+            mCall.finish();
+
+            release(mConnection, errString != null || interrupted != null);
+            releasePermit(mPermits);
+            mPermits = null;
 
-            if (errString != null) {
-                response = getErrorResponse(statusCode, errString);
+            if (interrupted != null) {
+                response = new ReceivedResponse(interrupted);
+            } else if (errString != null) {
+                response = new ReceivedResponse(getErrorResponse(statusCode, errString));
             }
         }
 
@@ -153,7 +276,7 @@ class StreamingClient extends HttpClient {
     }
 
     /**
-     * Open or close a stream in the background
+     * Open a stream in the background
      */
     private abstract class StreamRequestTask extends AsyncTask<ApiRequest, Void, Response> {
         @Override
@@ -173,14 +296,38 @@ class StreamingClient extends HttpClient {
             }
 
             if (mOutputStream != null && mOpenListener != null) {
-                mOpenListener.onOpen(mOutputStream);
+                mOpenListener.onOpen(new Upload());
             }
         }
 
         protected abstract Response run(ApiRequest request);
     }
 
+    /**
+     * Expose the open connection to the caller
+     */
+    private class Upload extends UploadStream {
+        @Override
+        public OutputStream getOutputStream() {
+            return mOutputStream;
+        }
+
+        @Override
+        public void close() {
+            StreamingClient.this.close();
+        }
+    }
+
+    private final ResponseListener mListener;
+    private Call mCall;
+    private int mState = STATE_OPENING;
+    private volatile ConnectionPermits mPermits;
     private HttpsURLConnection mConnection;
     private OutputStream mOutputStream;
     private OpenStreamListener mOpenListener;
+    private ResponseParser mParser;
+
+    private static final int STATE_OPENING = 0;
+    private static final int STATE_OPEN = 1;
+    private static final int STATE_CLOSING = 2;
 }
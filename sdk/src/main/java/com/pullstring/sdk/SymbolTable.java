@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Map the names that repeat across a project's responses (characters, behaviors, parameter keys,
+ * entity and phoneme names) to one canonical String each, so that every response shares the
+ * same instances instead of holding its own copies. The table is bounded: once it is full, or
+ * for unusually long values, names are passed through unchanged.
+ */
+class SymbolTable {
+    /**
+     * Get the table shared by every conversation with a project. Tables for the least recently
+     * used projects are dropped once more than a few are in use.
+     */
+    static SymbolTable forProject(String project) {
+        synchronized (sProjects) {
+            SymbolTable table = sProjects.get(project);
+            if (table == null) {
+                table = new SymbolTable();
+                sProjects.put(project, table);
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Get the canonical instance of a name.
+     * @return An equal String, or null if name is null.
+     */
+    String intern(String name) {
+        if (name == null || name.length() > MAX_SYMBOL_LENGTH) {
+            return name;
+        }
+
+        String symbol = mSymbols.get(name);
+        if (symbol != null) {
+            return symbol;
+        }
+
+        if (mSize.get() >= MAX_SYMBOLS) {
+            return name;
+        }
+
+        symbol = mSymbols.putIfAbsent(name, name);
+        if (symbol != null) {
+            return symbol;
+        }
+
+        mSize.incrementAndGet();
+        return name;
+    }
+
+    private final ConcurrentHashMap<String, String> mSymbols = new ConcurrentHashMap<>();
+    private final AtomicInteger mSize = new AtomicInteger();
+
+    private static final int MAX_SYMBOLS = 2048;
+    private static final int MAX_SYMBOL_LENGTH = 64;
+    private static final int MAX_PROJECTS = 4;
+
+    private static final LinkedHashMap<String, SymbolTable> sProjects =
+            new LinkedHashMap<String, SymbolTable>(MAX_PROJECTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SymbolTable> eldest) {
+                    return size() > MAX_PROJECTS;
+                }
+            };
+}
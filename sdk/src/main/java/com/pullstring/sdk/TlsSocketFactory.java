@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Create TLS sockets from a single SSLSocketFactory shared by the whole SDK, so every
+ * connection draws on the same session cache and reconnects can resume an earlier session
+ * instead of doing a full handshake. Each handshake is reported to a TransportMetrics object.
+ */
+class TlsSocketFactory extends SSLSocketFactory {
+    TlsSocketFactory(TransportMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Replace the session cache used by all connections, e.g. with one stored on disk so
+     * sessions survive the app being restarted. Pass null to keep sessions in memory only.
+     */
+    static synchronized void setSessionCache(SSLSessionCache cache) {
+        sDelegate = SSLCertificateSocketFactory.getDefault(HANDSHAKE_TIMEOUT, cache);
+    }
+
+    private static synchronized SSLSocketFactory delegate() {
+        if (sDelegate == null) {
+            sDelegate = SSLCertificateSocketFactory.getDefault(HANDSHAKE_TIMEOUT, null);
+        }
+        return sDelegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate().getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate().getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return track(delegate().createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return track(delegate().createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return track(delegate().createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return track(delegate().createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return track(delegate().createSocket(address, port, localAddress, localPort));
+    }
+
+    /**
+     * Count the socket's handshake once it completes. A resumed session was created before the
+     * socket was, while a full handshake creates a new one.
+     */
+    private Socket track(Socket socket) {
+        if (!(socket instanceof SSLSocket)) {
+            return socket;
+        }
+
+        final long created = System.currentTimeMillis();
+        ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                mMetrics.addHandshake(event.getSession().getCreationTime() < created);
+            }
+        });
+        return socket;
+    }
+
+    private final TransportMetrics mMetrics;
+
+    private static SSLSocketFactory sDelegate;
+
+    private static final int HANDSHAKE_TIMEOUT = 15 * 1000;
+}
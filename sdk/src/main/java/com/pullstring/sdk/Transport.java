@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+/**
+ * <p>
+ * Define how requests from a Conversation reach the PullString Web API.
+ * </p><p>
+ * The default transport, UrlConnectionTransport, is built on HttpsURLConnection. Another HTTP
+ * stack can be plugged in by subclassing Transport and passing an instance to the Conversation
+ * constructor. Such a transport sends ApiRequest.getBody() with ApiRequest.getHeaders() to
+ * ApiRequest.getUrl(), and turns the answer into a Response with ApiRequest.parseResponse().
+ * InMemoryTransport answers requests with canned responses and is useful in tests.
+ * </p><p>
+ * All operations are asynchronous. Responses must be delivered to the ResponseListener on the
+ * main thread, exactly once per request, including requests that are cancelled or time out.
+ * A single Transport may be shared by any number of Conversations.
+ * </p>
+ */
+public abstract class Transport {
+    /**
+     * Get the Transport used by Conversations created without one. Unless replaced, this is a
+     * UrlConnectionTransport shared by the whole process.
+     * @return The default Transport.
+     */
+    public static synchronized Transport getDefault() {
+        if (sDefault == null) {
+            sDefault = new UrlConnectionTransport();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Replace the Transport used by Conversations created without one. Conversations that
+     * already exist keep the Transport they were created with.
+     * @param transport The new default Transport.
+     */
+    public static synchronized void setDefault(Transport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport == null");
+        }
+        sDefault = transport;
+    }
+
+    /**
+     * Asynchronously POST a request to the Web API.
+     * @param request The request to send.
+     * @param listener Receives the Response, or a Response with a failed Status on error.
+     * @return A handle to cancel the request with.
+     */
+    public abstract RequestHandle post(ApiRequest request, ResponseListener listener);
+
+    /**
+     * Asynchronously open a chunked upload, such as for streaming audio. Once the connection is
+     * established, openListener receives an UploadStream to write to. Closing that stream
+     * completes the request and delivers the Response to listener. If the stream cannot be
+     * opened, listener receives a Response with a failed Status instead.
+     * @param request The request describing the upload. Its body is ignored.
+     * @param openListener Receives the UploadStream once it is ready.
+     * @param listener Receives the Response once the upload has been closed.
+     * @return A handle to cancel the upload with.
+     */
+    public abstract RequestHandle openStream(ApiRequest request, OpenStreamListener openListener,
+                                    ResponseListener listener);
+
+    /**
+     * Connect to the Web API ahead of the first request, so that it does not pay for the DNS
+     * lookup, TCP connect and TLS handshake. Returns immediately; the work happens in the
+     * background. Transports without connection setup costs may ignore this, which is the
+     * default.
+     */
+    public void prewarm() {
+    }
+
+    /**
+     * Check whether every Conversation created with this Transport calls prewarm().
+     * @return true if connections are prewarmed when a Conversation is created.
+     */
+    public boolean isPrewarmOnCreate() {
+        return mPrewarmOnCreate;
+    }
+
+    /**
+     * Call prewarm() whenever a Conversation is created with this Transport, so that the
+     * connection is ready by the time Conversation.start() is called. Off by default.
+     * @param prewarmOnCreate true to prewarm when a Conversation is created.
+     */
+    public void setPrewarmOnCreate(boolean prewarmOnCreate) {
+        mPrewarmOnCreate = prewarmOnCreate;
+    }
+
+    private volatile boolean mPrewarmOnCreate;
+
+    private static Transport sDefault;
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals describing the traffic a Transport has sent and received, and how often new
+ * connections resumed a TLS session. All counters are safe to read from any thread.
+ */
+public class TransportMetrics {
+    /**
+     * Get the total size of all request bodies before compression.
+     * @return The number of bytes.
+     */
+    public long getRequestBytes() {
+        return mRequestBytes.get();
+    }
+
+    /**
+     * Get the total size of all request bodies as written to the network.
+     * @return The number of bytes.
+     */
+    public long getRequestBytesSent() {
+        return mRequestBytesSent.get();
+    }
+
+    /**
+     * Get the total size of all response bodies after decompression.
+     * @return The number of bytes.
+     */
+    public long getResponseBytes() {
+        return mResponseBytes.get();
+    }
+
+    /**
+     * Get the total size of all response bodies as read from the network.
+     * @return The number of bytes.
+     */
+    public long getResponseBytesReceived() {
+        return mResponseBytesReceived.get();
+    }
+
+    /**
+     * Get how much request bodies were shrunk by compression, e.g. 4.0 if they took up a quarter
+     * of their original size on the network.
+     * @return The compression ratio, or 1.0 if nothing has been sent.
+     */
+    public double getRequestCompressionRatio() {
+        return ratio(getRequestBytes(), getRequestBytesSent());
+    }
+
+    /**
+     * Get how much response bodies were shrunk by compression, e.g. 4.0 if they took up a
+     * quarter of their decoded size on the network.
+     * @return The compression ratio, or 1.0 if nothing has been received.
+     */
+    public double getResponseCompressionRatio() {
+        return ratio(getResponseBytes(), getResponseBytesReceived());
+    }
+
+    /**
+     * Get the number of TLS handshakes completed on new connections.
+     * @return The number of handshakes, full or resumed.
+     */
+    public long getTlsHandshakes() {
+        return mTlsHandshakes.get();
+    }
+
+    /**
+     * Get the number of TLS handshakes that resumed an earlier session rather than negotiating
+     * a new one.
+     * @return The number of resumed handshakes.
+     */
+    public long getTlsResumedHandshakes() {
+        return mTlsResumedHandshakes.get();
+    }
+
+    /**
+     * Get the fraction of TLS handshakes that resumed an earlier session.
+     * @return The resumption hit rate between 0 and 1, or 0 if no handshakes have completed.
+     */
+    public double getTlsResumptionRate() {
+        long handshakes = getTlsHandshakes();
+        if (handshakes == 0) {
+            return 0;
+        }
+        return (double) getTlsResumedHandshakes() / handshakes;
+    }
+
+    /**
+     * Set all counters back to zero.
+     */
+    public void reset() {
+        mRequestBytes.set(0);
+        mRequestBytesSent.set(0);
+        mResponseBytes.set(0);
+        mResponseBytesReceived.set(0);
+        mTlsHandshakes.set(0);
+        mTlsResumedHandshakes.set(0);
+    }
+
+    void addRequest(long bytes, long bytesSent) {
+        mRequestBytes.addAndGet(bytes);
+        mRequestBytesSent.addAndGet(bytesSent);
+    }
+
+    void addResponse(long bytes, long bytesReceived) {
+        mResponseBytes.addAndGet(bytes);
+        mResponseBytesReceived.addAndGet(bytesReceived);
+    }
+
+    void addHandshake(boolean resumed) {
+        mTlsHandshakes.incrementAndGet();
+        if (resumed) {
+            mTlsResumedHandshakes.incrementAndGet();
+        }
+    }
+
+    private static double ratio(long decoded, long encoded) {
+        if (decoded == 0 || encoded == 0) {
+            return 1.0;
+        }
+        return (double) decoded / encoded;
+    }
+
+    private final AtomicLong mRequestBytes = new AtomicLong();
+    private final AtomicLong mRequestBytesSent = new AtomicLong();
+    private final AtomicLong mResponseBytes = new AtomicLong();
+    private final AtomicLong mResponseBytesReceived = new AtomicLong();
+    private final AtomicLong mTlsHandshakes = new AtomicLong();
+    private final AtomicLong mTlsResumedHandshakes = new AtomicLong();
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import java.io.OutputStream;
+
+/**
+ * An open, chunked upload to the Web API created by Transport.openStream().
+ */
+public abstract class UploadStream {
+    /**
+     * Get the stream to write request data to.
+     * @return The OutputStream for the upload.
+     */
+    public abstract OutputStream getOutputStream();
+
+    /**
+     * Asynchronously finish the upload. The Response is delivered to the ResponseListener that
+     * was passed to Transport.openStream().
+     */
+    public abstract void close();
+}
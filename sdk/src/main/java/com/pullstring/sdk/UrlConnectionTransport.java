@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2017 PullString, Inc.
+ *
+ * The following source code is licensed under the MIT license.
+ * See the LICENSE file, or https://opensource.org/licenses/MIT.
+ */
+package com.pullstring.sdk;
+
+import android.content.Context;
+import android.net.SSLSessionCache;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * The default Transport, which talks to the Web API over HttpsURLConnection.
+ * </p><p>
+ * A single instance is shared by every Conversation created without an explicit Transport, so
+ * all of them draw from the same pool of keep-alive connections (see ConnectionPool). Use
+ * setMaxConnections() to bound how many sockets those conversations may hold open at once.
+ * </p><p>
+ * JSON requests and audio streams run on two separate thread pools owned by the transport, so
+ * a slow audio upload waiting on its ASR result never holds up a text turn. The pools can be
+ * resized, or replaced with Executors supplied by the app. Those threads only read responses;
+ * parsing happens on a separate SDK-wide pool with one thread per core, so the request pool
+ * is free for the next request while a large response is still being parsed.
+ * </p><p>
+ * TLS sessions are cached by a socket factory shared across the SDK, so a new connection (for
+ * example, each push-to-talk audio stream) can resume an earlier session rather than repeat the
+ * full handshake. See TransportMetrics.getTlsResumptionRate().
+ * </p>
+ */
+public class UrlConnectionTransport extends Transport {
+    static {
+        // the platform reads its keep-alive settings once, when the first connection is made
+        ConnectionPool.applyDefault();
+    }
+
+    /**
+     * Create a transport for the public PullString Web API.
+     */
+    public UrlConnectionTransport() {
+        this(VersionInfo.API_BASE_URL);
+    }
+
+    /**
+     * Create a transport for a Web API hosted at a different base URL.
+     * @param baseUrl The base URL, e.g. "https://conversation.pullstring.ai/v1/".
+     */
+    public UrlConnectionTransport(String baseUrl) {
+        mBaseUrl = baseUrl;
+        mApiClient = new ApiClient(baseUrl);
+        mApiClient.setMetrics(mMetrics);
+        mApiClient.setSocketFactory(mSocketFactory);
+        mApiClient.setTimeouts(mConnectTimeout, mReadTimeout, mTimeout);
+        setRequestExecutor(SdkExecutors.newPool(REQUEST_THREAD_NAME, DEFAULT_REQUEST_THREADS));
+        setStreamExecutor(SdkExecutors.newPool(STREAM_THREAD_NAME, DEFAULT_STREAM_THREADS));
+        mApiClient.setRetryPolicy(mRetryPolicy);
+        mApiClient.setHedgeExecutor(SdkExecutors.newDirectPool(HEDGE_THREAD_NAME, DEFAULT_HEDGE_THREADS));
+    }
+
+    /**
+     * Persist TLS sessions in the app's private storage, so that connections made after the
+     * app restarts can resume them too. Applies to every UrlConnectionTransport. Without this,
+     * sessions are only cached in memory.
+     * @param context Any Context belonging to the app.
+     */
+    public static void setSessionCache(Context context) {
+        TlsSocketFactory.setSessionCache(context != null ? new SSLSessionCache(context) : null);
+    }
+
+    /**
+     * Get the time allowed to establish a TCP connection.
+     * @return The connect timeout in milliseconds, or 0 for none.
+     */
+    public int getConnectTimeout() {
+        return mConnectTimeout;
+    }
+
+    /**
+     * Set the time allowed to establish a TCP connection. The default is 15 seconds.
+     * @param connectTimeout The connect timeout in milliseconds, or 0 for none.
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        if (connectTimeout < 0) {
+            throw new IllegalArgumentException("connectTimeout < 0: " + connectTimeout);
+        }
+
+        mConnectTimeout = connectTimeout;
+        mApiClient.setTimeouts(mConnectTimeout, mReadTimeout, mTimeout);
+    }
+
+    /**
+     * Get the time allowed for any single read, including during the TLS handshake.
+     * @return The read timeout in milliseconds, or 0 for none.
+     */
+    public int getReadTimeout() {
+        return mReadTimeout;
+    }
+
+    /**
+     * Set the time allowed for any single read, including during the TLS handshake. The
+     * default is 30 seconds.
+     * @param readTimeout The read timeout in milliseconds, or 0 for none.
+     */
+    public void setReadTimeout(int readTimeout) {
+        if (readTimeout < 0) {
+            throw new IllegalArgumentException("readTimeout < 0: " + readTimeout);
+        }
+
+        mReadTimeout = readTimeout;
+        mApiClient.setTimeouts(mConnectTimeout, mReadTimeout, mTimeout);
+    }
+
+    /**
+     * Get the default overall deadline for a request.
+     * @return The deadline in milliseconds, or 0 for none.
+     */
+    public long getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * Set the default overall deadline for a request, covering waiting for a free connection,
+     * connecting, the TLS handshake, uploading, and reading the response. Requests whose Request
+     * has its own timeout use that instead. The default is 60 seconds.
+     * @param timeout The deadline in milliseconds, or 0 for none.
+     */
+    public void setTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout < 0: " + timeout);
+        }
+
+        mTimeout = timeout;
+        mApiClient.setTimeouts(mConnectTimeout, mReadTimeout, mTimeout);
+    }
+
+    /**
+     * Get the Executor that JSON and audio file requests run on.
+     * @return The request Executor.
+     */
+    public Executor getRequestExecutor() {
+        return mRequestExecutor;
+    }
+
+    /**
+     * Run JSON and audio file requests on an Executor supplied by the app. Requests already
+     * submitted finish on the previous Executor, which is not shut down.
+     * @param executor The new request Executor.
+     */
+    public void setRequestExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor == null");
+        }
+
+        mRequestExecutor = executor;
+        mApiClient.setExecutor(executor);
+    }
+
+    /**
+     * Get the Executor that audio streams are opened and closed on.
+     * @return The stream Executor.
+     */
+    public Executor getStreamExecutor() {
+        return mStreamExecutor;
+    }
+
+    /**
+     * Open and close audio streams on an Executor supplied by the app. Streams already open keep
+     * using the previous Executor, which is not shut down.
+     * @param executor The new stream Executor.
+     */
+    public void setStreamExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor == null");
+        }
+
+        mStreamExecutor = executor;
+    }
+
+    /**
+     * Replace the request Executor with an SDK-owned pool of the given size. The default is 4.
+     * @param threads The number of threads.
+     */
+    public void setRequestPoolSize(int threads) {
+        setRequestExecutor(SdkExecutors.newPool(REQUEST_THREAD_NAME, threads));
+    }
+
+    /**
+     * Replace the stream Executor with an SDK-owned pool of the given size. The default is 2.
+     * @param threads The number of threads.
+     */
+    public void setStreamPoolSize(int threads) {
+        setStreamExecutor(SdkExecutors.newPool(STREAM_THREAD_NAME, threads));
+    }
+
+    /**
+     * Get the running totals of bytes sent and received, including how well compression worked.
+     * @return The TransportMetrics for this transport.
+     */
+    public TransportMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Get the size at which JSON request bodies are gzipped before sending.
+     * @return The threshold, in bytes, or 0 if request compression is off.
+     */
+    public int getRequestCompressionThreshold() {
+        return mCompressionThreshold;
+    }
+
+    /**
+     * Gzip JSON request bodies of at least the given size. Responses are always requested with
+     * gzip or deflate encoding and decoded transparently. If the Web API answers a compressed
+     * request with 415 Unsupported Media Type, the request is resent as is and compression is
+     * turned off for this transport. Off by default.
+     * @param threshold The minimum body size, in bytes, or 0 to turn request compression off.
+     */
+    public void setRequestCompressionThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold < 0: " + threshold);
+        }
+
+        mCompressionThreshold = threshold;
+        mApiClient.setCompressionThreshold(threshold);
+    }
+
+    /**
+     * Get how requests that are safe to repeat are retried and hedged.
+     * @return The current RetryPolicy.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Set how requests that are safe to repeat, such as Conversation.getEntities(), are retried
+     * after transient failures and hedged when slow. Requests that change conversation state
+     * are always sent exactly once. The default retries up to 3 times without hedging.
+     * @param policy The RetryPolicy to use, or RetryPolicy.none() to turn retries off.
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy == null");
+        }
+
+        mRetryPolicy = policy;
+        mApiClient.setRetryPolicy(policy);
+    }
+
+    /**
+     * Get the maximum number of connections this transport holds open at once.
+     * @return The connection limit, or 0 if there is no limit.
+     */
+    public int getMaxConnections() {
+        return mMaxConnections;
+    }
+
+    /**
+     * Limit the number of connections, including open audio streams, that this transport holds
+     * open at once. Further requests wait, in the order they were made, for a connection to
+     * become free and then reuse it. A request gives up waiting if it is cancelled or its
+     * deadline passes, and an audio stream if it is cancelled or the connect timeout passes.
+     * @param maxConnections The connection limit, or 0 for no limit.
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("maxConnections < 0: " + maxConnections);
+        }
+
+        mMaxConnections = maxConnections;
+        mPermits = maxConnections > 0 ? new ConnectionPermits(maxConnections) : null;
+        mApiClient.setConnectionPermits(mPermits);
+    }
+
+    /**
+     * Resolve and connect to the Web API's base URL in the background and park the connection
+     * in the keep-alive pool (see ConnectionPool), so the next request only costs one round
+     * trip. Calls made while a prewarm is still running are ignored.
+     */
+    @Override
+    public void prewarm() {
+        mApiClient.prewarm();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RequestHandle post(ApiRequest request, ResponseListener listener) {
+        return mApiClient.post(request, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RequestHandle openStream(ApiRequest request, OpenStreamListener openListener,
+                                    ResponseListener listener) {
+        StreamingClient client = new StreamingClient(mBaseUrl, listener);
+        client.setConnectionPermits(mPermits);
+        client.setMetrics(mMetrics);
+        client.setSocketFactory(mSocketFactory);
+        client.setExecutor(mStreamExecutor);
+        client.setTimeouts(mConnectTimeout, mReadTimeout, mTimeout);
+        return client.open(request, openListener);
+    }
+
+    private final String mBaseUrl;
+    private final ApiClient mApiClient;
+    private final TransportMetrics mMetrics = new TransportMetrics();
+    private final TlsSocketFactory mSocketFactory = new TlsSocketFactory(mMetrics);
+    private int mMaxConnections;
+    private int mCompressionThreshold;
+    private int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int mReadTimeout = DEFAULT_READ_TIMEOUT;
+    private long mTimeout = DEFAULT_TIMEOUT;
+    private RetryPolicy mRetryPolicy = new RetryPolicy();
+    private volatile Executor mRequestExecutor;
+    private volatile Executor mStreamExecutor;
+    private volatile ConnectionPermits mPermits;
+
+    static final int DEFAULT_CONNECT_TIMEOUT = 15 * 1000;
+    static final int DEFAULT_READ_TIMEOUT = 30 * 1000;
+    static final long DEFAULT_TIMEOUT = 60 * 1000;
+    static final int DEFAULT_REQUEST_THREADS = 4;
+    static final int DEFAULT_STREAM_THREADS = 2;
+    static final int DEFAULT_HEDGE_THREADS = 2;
+    private static final String REQUEST_THREAD_NAME = "PullString-request";
+    private static final String STREAM_THREAD_NAME = "PullString-stream";
+    private static final String HEDGE_THREAD_NAME = "PullString-hedge";
+}